@@ -1,26 +1,52 @@
 package org.hyperagents.rdfsub;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.hyperagents.rdfsub.ldscript.DeclarativeTrigger;
+import org.hyperagents.rdfsub.ldscript.NotificationDispatcher;
+import org.hyperagents.rdfsub.ldscript.NotificationStreams;
 import org.hyperagents.rdfsub.ldscript.Sandbox;
+import org.hyperagents.rdfsub.tracing.Tracing;
+import org.hyperagents.rdfsub.tracing.UpdateCommitEvent;
+import org.hyperagents.rdfsub.tracing.UpdateReceivedEvent;
 
 import fr.inria.corese.compiler.eval.Interpreter;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.api.Loader;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.core.print.ResultFormat;
 import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.transform.Transformer;
 import fr.inria.corese.kgram.core.Mappings;
 import fr.inria.corese.sparql.api.IDatatype;
 import fr.inria.corese.sparql.datatype.DatatypeMap;
 import fr.inria.corese.sparql.exceptions.EngineException;
 import fr.inria.corese.sparql.exceptions.SafetyException;
 import fr.inria.corese.sparql.exceptions.UndefinedExpressionException;
+import fr.inria.corese.sparql.triple.parser.ASTQuery;
+import fr.inria.corese.sparql.triple.javacc1.ParserSparql1;
+import fr.inria.corese.sparql.triple.parser.Access;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -45,15 +71,91 @@ public class CoreseVerticle extends AbstractVerticle {
   private static final String SANDBOX_PREFIX_DEFINITION = "prefix sandbox: "
       + "<function://org.hyperagents.rdfsub.ldscript.Sandbox>\n";
   
+  private static final String WORKER_POOL_MODE = "worker-pool";
+  private static final String VIRTUAL_THREADS_MODE = "virtual-threads";
+  
+  private static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+  private static final int DEFAULT_QUERY_POOL_SIZE = 4;
+  private static final long DEFAULT_QUERY_TIMEOUT = 10000;
+  
+  // The number of data updates received but not yet applied, used for admission control
+  private static final AtomicInteger UPDATE_BACKLOG = new AtomicInteger();
+  
   private Graph graph;
   private String subscriberGraphURI;
   private CapabilityURIGenerator generator;
   
+  // Updates take the write lock. Read queries on topic graphs run on a snapshot of the graph, and 
+  // only take the read lock while a new snapshot is copied, so they never stall updates for longer 
+  // than the copy. A new snapshot is copied once the graph version changed.
+  private final ReadWriteLock graphLock = new ReentrantReadWriteLock(true);
+  private final Object snapshotMonitor = new Object();
+  private volatile long graphVersion = 0;
+  private volatile GraphSnapshot snapshot;
+  private QueryResultCache queryCache;
+  
+  // The update executor is null when blocking work runs on the Vert.x worker pool: updates and 
+  // trigger validations are ordered. Read queries always run on a dedicated bounded pool, so slow 
+  // queries cannot take up the threads that apply updates.
+  private ExecutorService updateExecutor;
+  private ExecutorService queryExecutor;
+  private long queryTimeout;
+  
+  /**
+   * A read-only copy of the graph along with the versions of the topic graphs at the time of the 
+   * copy.
+   */
+  private static class GraphSnapshot {
+    private final Graph graph;
+    private final long graphVersion;
+    private final Map<String, Long> topicVersions;
+    
+    private GraphSnapshot(Graph graph, long graphVersion, Map<String, Long> topicVersions) {
+      this.graph = graph;
+      this.graphVersion = graphVersion;
+      this.topicVersions = topicVersions;
+    }
+  }
+  
   @Override
   public void start() throws LoadException {
     graph = Graph.create();
     Sandbox.getInstance(graph);
+    NotificationDispatcher.setVertx(vertx);
     generator = new CapabilityURIGenerator(config());
+    Tracing.setSamplingInterval(config().getInteger("trace-sampling-interval", 1));
+    queryCache = new QueryResultCache(config().getInteger("query-cache-size", 
+        DEFAULT_QUERY_CACHE_SIZE));
+    
+    int queryPoolSize = config().getInteger("query-pool-size", DEFAULT_QUERY_POOL_SIZE);
+    queryTimeout = config().getLong("query-timeout", DEFAULT_QUERY_TIMEOUT);
+    String executionMode = config().getString("execution-mode", WORKER_POOL_MODE);
+    
+    if (executionMode.equals(VIRTUAL_THREADS_MODE)) {
+      try {
+        // Updates on the graph must be applied in order, one at a time
+        updateExecutor = Executors.newSingleThreadExecutor(
+            VirtualThreads.newThreadFactory("rdfsub-update-"));
+        queryExecutor = Executors.newFixedThreadPool(queryPoolSize, 
+            VirtualThreads.newThreadFactory("rdfsub-query-"));
+        LOGGER.info("Running blocking Corese work on virtual threads");
+      } catch (UnsupportedOperationException e) {
+        if (updateExecutor != null) {
+          updateExecutor.shutdownNow();
+          updateExecutor = null;
+        }
+        
+        LOGGER.warn("Virtual threads are not supported by this JVM, using the worker pool instead");
+      }
+    } else if (!executionMode.equals(WORKER_POOL_MODE)) {
+      LOGGER.warn("Unknown execution mode: " + executionMode + ", using the worker pool instead");
+    }
+    
+    Sandbox.setVirtualThreads(usesVirtualThreads());
+    
+    if (queryExecutor == null) {
+      queryExecutor = Executors.newFixedThreadPool(queryPoolSize);
+    }
     
     String updateFunPath = config().getString("process-queries-function", 
         "src/resources/processRegisteredQueries.rq");
@@ -69,67 +171,181 @@ public class CoreseVerticle extends AbstractVerticle {
     vertx.eventBus().consumer("corese", this::handleRequest);
   }
   
+  @Override
+  public void stop() {
+    if (updateExecutor != null) {
+      updateExecutor.shutdownNow();
+    }
+    
+    if (queryExecutor != null) {
+      queryExecutor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Checks if blocking Corese work runs on virtual threads, that is if the virtual threads execution 
+   * mode was requested and is supported by the JVM.
+   */
+  boolean usesVirtualThreads() {
+    return updateExecutor != null;
+  }
+  
   private void handleRequest(Message<String> message) {
     String method = message.headers().get("method");
     
-    switch (method) {
+    switch (String.valueOf(method)) {
       case "subscribe":
-        processSubscription(message.body());
+        processSubscription(message.headers().get("subscription"), message.body());
         break;
       case "insert":
-        updateTriple("insert data", message.body());
-        LOGGER.info("Triple inserted: " + message.body());
+        updateTriple("insert data", message);
         break;
       case "delete":
-        updateTriple("delete data", message.body());
-        LOGGER.info("Triple deleted: " + message.body());
+        updateTriple("delete data", message);
+        break;
+      case "query":
+        processQuery(message);
         break;
       default:
+        message.fail(400, "Unknown method: " + method);
         break;
     }
 
   }
   
-  private void updateTriple(String updateMethod, String quad) {
-    String query = "@event\n" + updateMethod + " {" + quad + "}";
+  /**
+   * Applies a data update. Once the update was applied, the sender is notified via a reply (if the 
+   * sender is waiting for one). Sampled updates are traced with JFR events (see {@link Tracing}).
+   */
+  private void updateTriple(String updateMethod, Message<String> message) {
+    String action = message.headers().get("method");
+    String topic = message.headers().get("topic");
+    
+    // Cached query results are invalidated based on the topic, so no other graph can be written
+    if (!writesOnlyTopic(message.body(), topic)) {
+      message.fail(400, "The update does not match its topic.");
+      return;
+    }
+    
+    UPDATE_BACKLOG.incrementAndGet();
+    String query = "@event\n" + updateMethod + " {" + message.body() + "}";
+    boolean sampled = Tracing.sampleUpdate();
+    
+    if (sampled) {
+      UpdateReceivedEvent receivedEvent = new UpdateReceivedEvent();
+      
+      if (receivedEvent.shouldCommit()) {
+        receivedEvent.action = action;
+        receivedEvent.topic = topic;
+        receivedEvent.commit();
+      }
+    }
     
-    vertx.executeBlocking(promise -> {
+    executeBlocking(updateExecutor, true, promise -> {
+      UpdateCommitEvent commitEvent = sampled ? new UpdateCommitEvent() : null;
+      
+      if (commitEvent != null) {
+        commitEvent.begin();
+      }
+      
+      Tracing.setSampled(sampled);
+      graphLock.writeLock().lock();
       try {
         QueryProcess.create(graph).sparqlUpdate(query);
+        graphVersion++;
+        queryCache.topicChanged(topic);
+        
         promise.complete();
       } catch (EngineException e) {
         promise.fail(e);
+      } finally {
+        graphLock.writeLock().unlock();
+        Tracing.clearSampled();
+        
+        if (commitEvent != null) {
+          commitEvent.end();
+          
+          if (commitEvent.shouldCommit()) {
+            commitEvent.action = action;
+            commitEvent.topic = topic;
+            commitEvent.succeeded = promise.future().succeeded();
+            commitEvent.commit();
+          }
+        }
       }
     }, res -> {
-      if (res.failed()) {
+      UPDATE_BACKLOG.decrementAndGet();
+      
+      if (res.succeeded()) {
+        message.reply(null);
+      } else {
         LOGGER.info("Sending notifications failed: " + res.cause());
+        message.fail(500, res.cause().getMessage());
       }
     });
   }
   
-  private void processSubscription(String subscription) {
+  /**
+   * Checks that a data update only writes quads in the graph of its topic, i.e. it is a single graph 
+   * block created with HttpAPIVerticle.createQuad from valid IRIs. The subscriber graph is never a 
+   * topic.
+   */
+  private boolean writesOnlyTopic(String quad, String topic) {
+    if (topic == null || topic.equals(subscriberGraphURI)) {
+      return false;
+    }
+    
+    String graphBlock = "graph <" + topic + "> {";
+    
+    return quad.startsWith(graphBlock) && quad.endsWith("}") 
+        && quad.indexOf('{') == graphBlock.length() - 1 && quad.indexOf('}') == quad.length() - 1;
+  }
+  
+  /**
+   * Retrieves the number of data updates that were received but not yet applied (or failed), 
+   * including the updates still queued for the graph.
+   * 
+   * @return the size of the backlog of data updates
+   */
+  public static int getUpdateBacklog() {
+    return UPDATE_BACKLOG.get();
+  }
+  
+  /**
+   * Validates and saves a subscription. The IRI of the subscription is generated by the HTTP API and 
+   * returned to the subscriber, or generated here if it is not provided. Subscriptions without a 
+   * callback IRI only receive notifications over streams (see {@link NotificationStreams}).
+   */
+  private void processSubscription(String requestedIRI, String subscription) {
     // TODO: check that the SPARQL query is authorized to access the specified datasets
     Optional<String> callbackIri = getObjectAsString(subscription, Loader.TURTLE_FORMAT, "us:callback");
     Optional<String> triggerIri = getObjectAsString(subscription, Loader.TURTLE_FORMAT, "us:trigger");
     
-    if (!callbackIri.isPresent() || !triggerIri.isPresent()) {
+    if (!triggerIri.isPresent()) {
       return;
     }
     
-    Future<Void> validCallbackFuture = Future.future(promise -> {
-      WebClient webClient = WebClient.create(vertx);
-      webClient.getAbs(callbackIri.get()).send(ar -> {
-        if (ar.succeeded()) {
-          if (ar.result().statusCode() == 204) {
-            promise.complete();
+    Future<Void> validCallbackFuture;
+    
+    if (callbackIri.isPresent()) {
+      validCallbackFuture = Future.future(promise -> {
+        WebClient webClient = WebClient.create(vertx);
+        webClient.getAbs(callbackIri.get()).send(ar -> {
+          if (ar.succeeded()) {
+            if (ar.result().statusCode() == 204) {
+              promise.complete();
+            } else {
+              promise.fail("Status code: " + ar.result().statusCode());
+            }
           } else {
-            promise.fail("Status code: " + ar.result().statusCode());
+            promise.fail("Callback IRI is unreachable.");
           }
-        } else {
-          promise.fail("Callback IRI is unreachable.");
-        }
+        });
       });
-    });
+    } else {
+      // Subscriptions that only use streams do not have a callback IRI to verify
+      validCallbackFuture = Future.succeededFuture();
+    }
     
     LOGGER.info("New subscription requested with triggering function: " + triggerIri);
     // Retrieve async the linked function used for the trigger and check the syntax.
@@ -142,44 +358,24 @@ public class CoreseVerticle extends AbstractVerticle {
             HttpResponse<String> response = ar.result();
             if (response.statusCode() == 200) {
               if (response.getHeader("Content-Type").equals("application/sparql-query")) {
-                
-                try {
-                  
-                  LOGGER.info("Checking the trigger function's syntax:\n" + response.body());
-                  
-                  // Remove the triggering function if it was already exported
-                  if (Interpreter.getExtension().get(triggerIri.get()) != null) {
-                    Interpreter.getExtension().removeNamespace(triggerIri.get());
+                // Validations change global LDScript state (exported functions, access levels), so 
+                // they run in order with data updates, which invoke the exported triggers
+                executeBlocking(updateExecutor, true, 
+                    p -> validateTriggerFunction(triggerIri.get(), response.body(), p), promise);
+              } else if (response.getHeader("Content-Type").equals("text/turtle")) {
+                // Declarative triggers are compiled to Java matchers and bypass the LDScript sandbox. 
+                // Compiling loads the trigger into a Corese graph, so it does not run on the event 
+                // loop, and the trigger is registered in order with data updates
+                executeBlocking(updateExecutor, true, p -> {
+                  try {
+                    DeclarativeTrigger.register(triggerIri.get(), 
+                        DeclarativeTrigger.compile(response.body()));
+                    p.complete();
+                  } catch (LoadException | EngineException | IllegalArgumentException e) {
+                    LOGGER.info("The declarative trigger is invalid: " + e.getMessage());
+                    p.fail(e);
                   }
-                  
-                  Sandbox sandbox = new Sandbox(Graph.create());
-                  sandbox.query(response.body());
-                  
-                  IDatatype result = sandbox.invokeTrigger(triggerIri.get(),
-                      DatatypeMap.createList(), DatatypeMap.createList());
-                  
-                  if (result == null) {
-                    LOGGER.info("The trigger function is invalid.");
-                    promise.fail("The trigger function is invalid.");
-                  } else if (!result.isBoolean()) {
-                    LOGGER.info("The trigger function does not return a boolean. Returned value was: " 
-                        + result);
-                    promise.fail("The trigger function does not return a boolean.");
-                  } else {
-                    promise.complete();
-                  }
-                
-                } catch (SafetyException e) {
-                  LOGGER.info("The trigger raised a security exception: " + e.getMessage());
-                  promise.fail(e);
-                } catch (UndefinedExpressionException e) {
-                  LOGGER.info("The trigger calls a Linked Function that is either not defined or "
-                      + "not authorized: " + e.getMessage());
-                  promise.fail(e);
-                } catch (EngineException e) {
-                  LOGGER.info(e.getMessage());
-                  promise.fail(e);
-                }
+                }, promise);
               } else {
                 promise.fail("Unsupported media type: " + response.getHeader("Content-Type"));
               }
@@ -198,23 +394,227 @@ public class CoreseVerticle extends AbstractVerticle {
     
     CompositeFuture.all(validCallbackFuture, validTriggerFuture).onComplete(ar -> {
       if (ar.succeeded()) {
-        try {
-          List<String> subscriptions = getAllSubscriptions();
-          String subscriptionIRI = generator.generateUniqueCapabilityURI("/subscriptions/", subscriptions);
-          
-          // The subscription to be created is identified by a null relative URI
-          String registration = subscription.replaceAll("<>", "<" + subscriptionIRI + ">");
-          
-          String query = "insert data "
-              + "{graph <" + subscriberGraphURI + "> { " + registration + "}}";
-          
-          QueryProcess.create(graph).sparqlUpdate(query);
-          LOGGER.info("Subscription saved successfully: " + subscriptionIRI);
-        } catch (EngineException e) {
-          LOGGER.debug(e.getMessage());
-        }
+        executeBlocking(updateExecutor, true, promise -> {
+          graphLock.writeLock().lock();
+          try {
+            List<String> subscriptions = getAllSubscriptions();
+            
+            if (requestedIRI != null && subscriptions.contains(requestedIRI)) {
+              promise.fail("The subscription already exists: " + requestedIRI);
+              return;
+            }
+            
+            String subscriptionIRI = (requestedIRI != null) ? requestedIRI 
+                : generator.generateUniqueCapabilityURI("/subscriptions/", subscriptions);
+            
+            // The subscription to be created is identified by a null relative URI
+            String registration = subscription.replaceAll("<>", "<" + subscriptionIRI + ">");
+            
+            String query = "insert data "
+                + "{graph <" + subscriberGraphURI + "> { " + registration + "}}";
+            
+            QueryProcess.create(graph).sparqlUpdate(query);
+            NotificationStreams.registerSubscription(subscriptionIRI, !callbackIri.isPresent());
+            LOGGER.info("Subscription saved successfully: " + subscriptionIRI);
+            promise.complete();
+          } catch (EngineException e) {
+            LOGGER.debug(e.getMessage());
+            promise.fail(e);
+          } finally {
+            graphLock.writeLock().unlock();
+          }
+        }, res -> {});
+      }
+    });
+  }
+  
+  /**
+   * Evaluates a read query on topic graphs and replies with the serialized result. The query must 
+   * specify its dataset (via FROM or FROM NAMED), which is used to look up cached results: a cached 
+   * result is reused as long as none of the topic graphs in the dataset was updated. Cached results 
+   * are served without taking the graph lock, and other queries are evaluated on a snapshot of the 
+   * graph (see {@link #getSnapshot()}). Queries are cancelled if they do not complete within the 
+   * query timeout.
+   */
+  private void processQuery(Message<String> message) {
+    String queryString = message.body();
+    Context context = vertx.getOrCreateContext();
+    Promise<QueryResultCache.CachedResult> promise = Promise.promise();
+    
+    java.util.concurrent.Future<?> evaluation = queryExecutor.submit(() -> {
+      try {
+        evaluateQuery(queryString, promise);
+      } catch (Throwable e) {
+        promise.tryFail(e);
       }
     });
+    
+    // Queries that time out are cancelled, which interrupts their evaluation
+    long timerId = vertx.setTimer(queryTimeout, id -> {
+      if (promise.tryFail(new TimeoutException("The query timed out."))) {
+        evaluation.cancel(true);
+      }
+    });
+    
+    promise.future().onComplete(res -> context.runOnContext(v -> {
+      vertx.cancelTimer(timerId);
+      
+      if (res.succeeded()) {
+        message.reply(res.result().getPayload(), new DeliveryOptions()
+            .addHeader("Content-Type", res.result().getContentType()));
+      } else if (res.cause() instanceof TimeoutException) {
+        LOGGER.info("Query evaluation timed out: " + queryString);
+        message.fail(503, res.cause().getMessage());
+      } else {
+        LOGGER.info("Query evaluation failed: " + res.cause().getMessage());
+        message.fail(400, res.cause().getMessage());
+      }
+    }));
+  }
+  
+  private void evaluateQuery(String queryString, Promise<QueryResultCache.CachedResult> promise) {
+    try {
+      // The query is only parsed at this point: compiling it would export the functions it
+      // defines, which could replace the functions of the hub or the triggers of subscribers
+      ASTQuery ast = ASTQuery.create(queryString);
+      ParserSparql1.create(ast).parse();
+      
+      if (ast.isUpdate()) {
+        promise.tryFail(new IllegalArgumentException("Only read queries are supported."));
+        return;
+      }
+      
+      if (!ast.getDefine().isEmpty() || !ast.getDefineLambda().isEmpty()) {
+        promise.tryFail(new IllegalArgumentException("Queries cannot define functions."));
+        return;
+      }
+      
+      Set<String> topics = new HashSet<String>();
+      ast.getDataset().getFrom().forEach(graphName -> topics.add(graphName.getLabel()));
+      ast.getDataset().getNamed().forEach(graphName -> topics.add(graphName.getLabel()));
+      
+      if (topics.isEmpty()) {
+        promise.tryFail(new IllegalArgumentException("The query must specify the topic graphs it "
+            + "reads using FROM or FROM NAMED."));
+        return;
+      }
+      
+      if (topics.contains(subscriberGraphURI)) {
+        promise.tryFail(new IllegalArgumentException(
+            "The query reads a graph that is not a topic."));
+        return;
+      }
+      
+      Optional<QueryResultCache.CachedResult> cached = queryCache.get(queryString, topics);
+      
+      if (cached.isPresent()) {
+        promise.tryComplete(cached.get());
+        return;
+      }
+      
+      GraphSnapshot current = getSnapshot();
+      
+      // The versions of the topics are the ones captured with the snapshot seen by the query
+      Map<String, Long> versions = new HashMap<String, Long>();
+      topics.forEach(topic -> versions.put(topic, 
+          current.topicVersions.getOrDefault(topic, 0L)));
+      
+      // Queries run with the lowest access level, like triggering functions
+      fr.inria.corese.sparql.triple.parser.Context context = 
+          new fr.inria.corese.sparql.triple.parser.Context();
+      context.setLevel(Access.Level.PUBLIC);
+      Mappings result = QueryProcess.create(current.graph).query(queryString, context);
+      
+      String contentType;
+      String payload;
+      
+      if (ast.isConstruct() || ast.isDescribe()) {
+        contentType = "text/turtle";
+        payload = Transformer.turtle((Graph) result.getGraph());
+      } else {
+        contentType = "application/sparql-results+xml";
+        payload = ResultFormat.format(result).toString();
+      }
+      
+      queryCache.put(queryString, versions, contentType, payload);
+      promise.tryComplete(new QueryResultCache.CachedResult(contentType, payload, versions));
+    } catch (EngineException e) {
+      promise.tryFail(e);
+    }
+  }
+  
+  /**
+   * Retrieves a snapshot of the graph for read queries. The snapshot is shared by all queries until 
+   * the graph is updated, and a new snapshot is then copied under the read lock. Long-running 
+   * queries thus only hold on to their snapshot and never delay data updates.
+   */
+  private GraphSnapshot getSnapshot() {
+    GraphSnapshot current = snapshot;
+    
+    if (current != null && current.graphVersion == graphVersion) {
+      return current;
+    }
+    
+    // Only one query copies the graph, concurrent queries wait for the new snapshot
+    synchronized (snapshotMonitor) {
+      graphLock.readLock().lock();
+      try {
+        if (snapshot == null || snapshot.graphVersion != graphVersion) {
+          Graph copy = graph.copy();
+          copy.init();
+          snapshot = new GraphSnapshot(copy, graphVersion, queryCache.getVersions());
+        }
+        
+        return snapshot;
+      } finally {
+        graphLock.readLock().unlock();
+      }
+    }
+  }
+  
+  /**
+   * Checks the syntax of an LDScript triggering function by loading it in an empty sandbox and 
+   * invoking it for an empty data update.
+   */
+  private void validateTriggerFunction(String triggerIri, String function, Promise<Void> promise) {
+    try {
+      
+      LOGGER.info("Checking the trigger function's syntax:\n" + function);
+      
+      // Remove the triggering function if it was already exported or compiled
+      DeclarativeTrigger.unregister(triggerIri);
+      if (Interpreter.getExtension().get(triggerIri) != null) {
+        Interpreter.getExtension().removeNamespace(triggerIri);
+      }
+      
+      Sandbox sandbox = new Sandbox(Graph.create());
+      sandbox.query(function);
+      
+      IDatatype result = sandbox.invokeTrigger(triggerIri,
+          DatatypeMap.createList(), DatatypeMap.createList());
+      
+      if (result == null) {
+        LOGGER.info("The trigger function is invalid.");
+        promise.fail("The trigger function is invalid.");
+      } else if (!result.isBoolean()) {
+        LOGGER.info("The trigger function does not return a boolean. Returned value was: " 
+            + result);
+        promise.fail("The trigger function does not return a boolean.");
+      } else {
+        promise.complete();
+      }
+    
+    } catch (SafetyException e) {
+      LOGGER.info("The trigger raised a security exception: " + e.getMessage());
+      promise.fail(e);
+    } catch (UndefinedExpressionException e) {
+      LOGGER.info("The trigger calls a Linked Function that is either not defined or "
+          + "not authorized: " + e.getMessage());
+      promise.fail(e);
+    } catch (EngineException e) {
+      LOGGER.info(e.getMessage());
+      promise.fail(e);
+    }
   }
   
   /**
@@ -241,6 +641,30 @@ public class CoreseVerticle extends AbstractVerticle {
     return subscriptions;
   }
   
+  /**
+   * Runs blocking code either on the Vert.x worker pool (if the executor is null) or on the given 
+   * executor. In both cases, the result handler is called on the verticle's context.
+   */
+  private <T> void executeBlocking(ExecutorService executor, boolean ordered, 
+      Handler<Promise<T>> blockingCode, Handler<AsyncResult<T>> resultHandler) {
+    if (executor == null) {
+      vertx.executeBlocking(blockingCode, ordered, resultHandler);
+      return;
+    }
+    
+    Context context = vertx.getOrCreateContext();
+    Promise<T> promise = Promise.promise();
+    promise.future().onComplete(ar -> context.runOnContext(v -> resultHandler.handle(ar)));
+    
+    executor.execute(() -> {
+      try {
+        blockingCode.handle(promise);
+      } catch (Throwable e) {
+        promise.tryFail(e);
+      }
+    });
+  }
+  
   private Optional<String> getObjectAsString(String representation, int format, String prop) {
     try {
       Graph data = Graph.create();
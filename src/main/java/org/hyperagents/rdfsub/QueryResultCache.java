@@ -0,0 +1,132 @@
+package org.hyperagents.rdfsub;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache for the results of read queries on topic graphs. Each cached result is tagged with
+ * the versions of the topic graphs read by the query, and a result is only returned while all those
+ * topics are still at the same versions. Updating a topic only increments its version, so that it
+ * stays cheap on the ingest path: stale results are dropped when they are looked up, or evicted.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+public class QueryResultCache {
+  private final Map<String, Long> topicVersions = new ConcurrentHashMap<String, Long>();
+  private final LinkedHashMap<String, CachedResult> results;
+
+  /**
+   * A serialized query result.
+   */
+  public static class CachedResult {
+    private final String contentType;
+    private final String payload;
+    private final Map<String, Long> versions;
+
+    CachedResult(String contentType, String payload, Map<String, Long> versions) {
+      this.contentType = contentType;
+      this.payload = payload;
+      this.versions = versions;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getPayload() {
+      return payload;
+    }
+  }
+
+  /**
+   * Creates a cache that holds at most a given number of results. The least recently used results
+   * are evicted first.
+   *
+   * @param maxSize the maximum number of cached results
+   */
+  public QueryResultCache(int maxSize) {
+    this.results = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Retrieves the current version of a topic graph. Topics that were never updated are at version 0.
+   *
+   * @param topic the IRI of the topic
+   * @return the current version of the topic
+   */
+  public long getVersion(String topic) {
+    return topicVersions.getOrDefault(topic, 0L);
+  }
+
+  /**
+   * Retrieves the current versions of all topic graphs that were updated at least once.
+   *
+   * @return a copy of the versions indexed by topic IRI
+   */
+  public Map<String, Long> getVersions() {
+    return new HashMap<String, Long>(topicVersions);
+  }
+
+  /**
+   * Increments the version of a topic graph, which invalidates all cached results that depend on it.
+   * This method should be called after an update on the topic graph was committed.
+   *
+   * @param topic the IRI of the topic
+   */
+  public void topicChanged(String topic) {
+    topicVersions.merge(topic, 1L, Long::sum);
+  }
+
+  /**
+   * Retrieves a cached result if all the topics it depends on are still at the same versions.
+   *
+   * @param query the query
+   * @param topics the IRIs of the topic graphs read by the query
+   * @return the cached result, or an empty optional if no valid result is cached
+   */
+  public Optional<CachedResult> get(String query, Set<String> topics) {
+    synchronized (results) {
+      CachedResult result = results.get(query);
+
+      if (result == null || !result.versions.keySet().equals(topics)) {
+        return Optional.empty();
+      }
+
+      for (Map.Entry<String, Long> entry : result.versions.entrySet()) {
+        if (getVersion(entry.getKey()) != entry.getValue()) {
+          results.remove(query);
+          return Optional.empty();
+        }
+      }
+
+      return Optional.of(result);
+    }
+  }
+
+  /**
+   * Caches the result of a query. The versions of the topics must be the ones of the graph state seen
+   * by the query (e.g., the versions captured together with a snapshot of the graph).
+   *
+   * @param query the query
+   * @param versions the versions of the topic graphs read by the query
+   * @param contentType the media type of the serialized result
+   * @param payload the serialized result
+   */
+  public void put(String query, Map<String, Long> versions, String contentType, String payload) {
+    synchronized (results) {
+      results.put(query, new CachedResult(contentType, payload, versions));
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package org.hyperagents.rdfsub;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utility class for creating executors backed by virtual threads. The hub is built for Java 8, so
+ * virtual threads are looked up reflectively and are only available when running on JDK 21+.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+public final class VirtualThreads {
+  private static final boolean SUPPORTED = probe();
+
+  private VirtualThreads() { }
+
+  /**
+   * Checks if the current JVM supports virtual threads. On JDK 19 and 20, virtual threads are a
+   * preview feature: the API is present but fails unless preview features are enabled, so support
+   * is probed by actually creating a virtual thread.
+   *
+   * @return true if virtual threads are available, false otherwise
+   */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  private static boolean probe() {
+    try {
+      // The thread is created but never started
+      newThreadFactory("rdfsub-probe-").newThread(() -> { });
+      return true;
+    } catch (UnsupportedOperationException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Creates a factory for virtual threads whose names start with a given prefix.
+   *
+   * @param prefix the prefix used to name the threads
+   * @return the thread factory
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ThreadFactory newThreadFactory(String prefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+        | InvocationTargetException e) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.", e);
+    }
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @return the executor
+   * @throws UnsupportedOperationException if the JVM does not support virtual threads
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.", e);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package org.hyperagents.rdfsub.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Admission control for data updates sent to the CoreseVerticle. The number of updates that were
+ * received but not yet applied by the CoreseVerticle (the backlog) is bounded, and the rate of
+ * updates is limited per publisher and per topic using token buckets. Requests that are not
+ * admitted should be rejected with {@code 503 Service Unavailable} and a {@code Retry-After} header.
+ *
+ * This class is not thread-safe and must only be used from the context of the HTTP API verticle.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+class AdmissionControl {
+  public static final int DEFAULT_MAX_BACKLOG = 10000;
+  public static final int DEFAULT_RETRY_AFTER = 1;
+
+  private final IntSupplier backlog;
+  private final int maxBacklog;
+  private final double publisherRate;
+  private final double topicRate;
+  private final int retryAfter;
+
+  private final Map<String, TokenBucket> publisherBuckets = new HashMap<String, TokenBucket>();
+  private final Map<String, TokenBucket> topicBuckets = new HashMap<String, TokenBucket>();
+
+  /**
+   * A token bucket that holds at most one second worth of tokens (and at least one token).
+   */
+  private static class TokenBucket {
+    private final double rate;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    private TokenBucket(double rate) {
+      this.rate = rate;
+      this.capacity = Math.max(rate, 1);
+      this.tokens = capacity;
+      this.lastRefill = System.nanoTime();
+    }
+
+    private void refill() {
+      long now = System.nanoTime();
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+      lastRefill = now;
+    }
+
+    private boolean isFull() {
+      refill();
+      return tokens >= capacity;
+    }
+  }
+
+  /**
+   * Creates an admission control.
+   *
+   * @param backlog supplies the number of updates that were received but not yet applied
+   * @param maxBacklog the maximum size of the backlog
+   * @param publisherRate the maximum number of updates per second for each publisher (0 for no limit)
+   * @param topicRate the maximum number of updates per second for each topic (0 for no limit)
+   * @param retryAfter the number of seconds after which rejected requests can be retried
+   */
+  AdmissionControl(IntSupplier backlog, int maxBacklog, double publisherRate, double topicRate,
+      int retryAfter) {
+    this.backlog = backlog;
+    this.maxBacklog = maxBacklog;
+    this.publisherRate = publisherRate;
+    this.topicRate = topicRate;
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * Creates an admission control from a configuration object with the (optional) keys: max-backlog,
+   * publisher-rate, topic-rate, retry-after.
+   *
+   * @param config the configuration; can be null
+   * @param backlog supplies the number of updates that were received but not yet applied
+   * @return the admission control
+   */
+  static AdmissionControl fromConfig(JsonObject config, IntSupplier backlog) {
+    if (config == null) {
+      config = new JsonObject();
+    }
+
+    return new AdmissionControl(backlog, config.getInteger("max-backlog", DEFAULT_MAX_BACKLOG),
+        config.getDouble("publisher-rate", 0.0), config.getDouble("topic-rate", 0.0),
+        config.getInteger("retry-after", DEFAULT_RETRY_AFTER));
+  }
+
+  /**
+   * Checks if the backlog of updates reached its bound.
+   *
+   * @return true if no more updates should be admitted, false otherwise
+   */
+  boolean isOverloaded() {
+    return backlog.getAsInt() >= maxBacklog;
+  }
+
+  /**
+   * Checks the quotas of a publisher and a topic, and consumes one token from each if both quotas
+   * allow for one more update.
+   *
+   * @param publisher the identifier of the publisher (e.g., its remote address)
+   * @param topic the IRI of the topic
+   * @return true if the update is within quotas, false otherwise
+   */
+  boolean tryAcquire(String publisher, String topic) {
+    TokenBucket publisherBucket = getBucket(publisherBuckets, publisher, publisherRate);
+    TokenBucket topicBucket = getBucket(topicBuckets, topic, topicRate);
+
+    if (publisherBucket != null) {
+      publisherBucket.refill();
+
+      if (publisherBucket.tokens < 1) {
+        return false;
+      }
+    }
+
+    if (topicBucket != null) {
+      topicBucket.refill();
+
+      if (topicBucket.tokens < 1) {
+        return false;
+      }
+
+      topicBucket.tokens--;
+    }
+
+    if (publisherBucket != null) {
+      publisherBucket.tokens--;
+    }
+
+    return true;
+  }
+
+  int getBacklog() {
+    return backlog.getAsInt();
+  }
+
+  int getRetryAfter() {
+    return retryAfter;
+  }
+
+  /**
+   * Removes the buckets of publishers and topics that were idle long enough to be refilled.
+   */
+  void pruneIdleBuckets() {
+    publisherBuckets.values().removeIf(TokenBucket::isFull);
+    topicBuckets.values().removeIf(TokenBucket::isFull);
+  }
+
+  private static TokenBucket getBucket(Map<String, TokenBucket> buckets, String key, double rate) {
+    if (rate <= 0) {
+      return null;
+    }
+
+    return buckets.computeIfAbsent(key, k -> new TokenBucket(rate));
+  }
+}
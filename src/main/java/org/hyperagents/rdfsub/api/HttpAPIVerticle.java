@@ -1,17 +1,33 @@
 package org.hyperagents.rdfsub.api;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hyperagents.rdfsub.CapabilityURIGenerator;
+import org.hyperagents.rdfsub.CoreseVerticle;
+import org.hyperagents.rdfsub.ldscript.NotificationStreams;
+
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.MultiMap;
 import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.parsetools.RecordParser;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
 /**
  * Deploys an HTTP interface for the RDFSub Hub. Subscribers can use this interface to register
- * SPARQL queries and publishers can use this interface to update topic graphs. 
+ * SPARQL queries and publishers can use this interface to update topic graphs. Topic graphs can 
+ * also be queried via a SPARQL endpoint. Publishers can also stream updates over long-lived 
+ * connections (see {@link StreamingIngest}), and subscribers can receive notifications over 
+ * WebSockets or Server-Sent Events (see {@link NotificationStreams}).
  * 
  * @author Andrei Ciortea, Interactions HSG
  *
@@ -19,14 +35,43 @@ import io.vertx.ext.web.handler.BodyHandler;
 public class HttpAPIVerticle extends AbstractVerticle {
   public static final String DEFAULT_HOST = "0.0.0.0";
   public static final int DEFAULT_PORT = 8090;
+  public static final int DEFAULT_STREAM_MAX_BACKLOG = 1000;
+  public static final long DEFAULT_UPDATE_TIMEOUT = DeliveryOptions.DEFAULT_TIMEOUT;
+  public static final long DEFAULT_NOTIFICATION_IDLE_TIMEOUT = 300000;
+  public static final int DEFAULT_STREAM_MAX_RECORD_SIZE = 65536;
   
   private static final Logger LOGGER = LoggerFactory.getLogger(HttpAPIVerticle.class.getName());
   
+  private CapabilityURIGenerator generator;
+  private AdmissionControl admissionControl;
+  private StreamingIngest streamingIngest;
+  private long updateTimeout;
+  private int streamMaxRecordSize;
+  
   @Override
   public void start() {
     int port = DEFAULT_PORT;
     String host = DEFAULT_HOST;
     
+    generator = new CapabilityURIGenerator(config());
+    
+    // The backlog is tracked by the CoreseVerticle, where updates are queued
+    admissionControl = AdmissionControl.fromConfig(config().getJsonObject("admission"), 
+        CoreseVerticle::getUpdateBacklog);
+    updateTimeout = config().getLong("update-timeout", DEFAULT_UPDATE_TIMEOUT);
+    vertx.setPeriodic(60000, id -> admissionControl.pruneIdleBuckets());
+    
+    streamingIngest = new StreamingIngest(vertx, admissionControl, 
+        config().getInteger("stream-max-backlog", DEFAULT_STREAM_MAX_BACKLOG), updateTimeout);
+    vertx.setPeriodic(1000, id -> streamingIngest.resumeIfDrained());
+    streamMaxRecordSize = config().getInteger("stream-max-record-size", 
+        DEFAULT_STREAM_MAX_RECORD_SIZE);
+    NotificationStreams.setBufferSize(config().getInteger("notification-buffer-size", 
+        NotificationStreams.DEFAULT_BUFFER_SIZE));
+    long notificationIdleTimeout = config().getLong("notification-idle-timeout", 
+        DEFAULT_NOTIFICATION_IDLE_TIMEOUT);
+    vertx.setPeriodic(60000, id -> NotificationStreams.pruneIdleChannels(notificationIdleTimeout));
+    
     JsonObject httpConfig = config().getJsonObject("http");
     
     if (httpConfig != null) {
@@ -44,6 +89,12 @@ public class HttpAPIVerticle extends AbstractVerticle {
   private Router createRouter() {
     Router router = Router.router(vertx);
     
+    // Streaming routes are registered before the body handler, which would buffer the whole stream
+    router.get("/publish/stream").handler(this::handleWebSocketStream);
+    router.post("/publish/stream").consumes("application/x-ndjson")
+      .handler(this::handleChunkedStream);
+    router.get("/notifications").handler(this::handleNotificationStream);
+    
     router.route().handler(BodyHandler.create());
     
     router.get("/").handler((routingContext) -> {
@@ -53,41 +104,307 @@ public class HttpAPIVerticle extends AbstractVerticle {
     });
     
     router.post("/subscription").consumes("text/turtle").handler((routingContext) -> {
+      if (admissionControl.isOverloaded()) {
+        rejectRequest(routingContext);
+        return;
+      }
+      
       String payload = routingContext.getBodyAsString();
       // TODO: validate subscribe payload syntax
       
-      DeliveryOptions options = new DeliveryOptions().addHeader("method", "subscribe");
+      // The subscription IRI is returned right away, it is used to attach notification streams
+      String subscriptionIri = generator.generateCapabilityURI("/subscriptions/");
+      
+      DeliveryOptions options = new DeliveryOptions()
+          .addHeader("method", "subscribe")
+          .addHeader("subscription", subscriptionIri);
       vertx.eventBus().send("corese", payload, options);
       
-      routingContext.response().setStatusCode(202).end();
+      routingContext.response()
+        .setStatusCode(202)
+        .putHeader("Location", subscriptionIri)
+        .end();
     });
     
     router.get("/publish").handler((routingContext) -> {
       MultiMap params = routingContext.queryParams();
+      // Publishers can optionally wait for the update to be applied
+      boolean wait = "true".equals(params.get("wait"));
       
-      if (params.size() == 5 && params.contains("action") && params.contains("topic") 
-          && params.contains("subject") && params.contains("predicate") && params.contains("object")) {
+      if (params.size() == (params.contains("wait") ? 6 : 5) && params.contains("action") 
+          && params.contains("topic") && params.contains("subject") && params.contains("predicate") 
+          && params.contains("object")) {
         
-        // TODO: validate params
         String action = params.get("action");
         String topic = params.get("topic");
         String subject = params.get("subject");
         String predicate = params.get("predicate");
         String object = params.get("object");
         
-        String quad = "graph <" + topic + "> { <" + subject + "> <" + predicate + "> <" + object + "> . }";
-        LOGGER.info("Data update: " + action + " " + quad);
+        if (!"insert".equals(action) && !"delete".equals(action)) {
+          routingContext.response().setStatusCode(400).end("Unknown action: " + action);
+          return;
+        }
+        
+        // The values are inserted as IRIs in the update, which would otherwise allow to inject data
+        if (!isValidIri(topic) || !isValidIri(subject) || !isValidIri(predicate) 
+            || !isValidIri(object)) {
+          routingContext.response().setStatusCode(400).end("Invalid IRI.");
+          return;
+        }
+        
+        if (admissionControl.isOverloaded() 
+            || !admissionControl.tryAcquire(routingContext.request().remoteAddress().host(), topic)) {
+          rejectRequest(routingContext);
+          return;
+        }
         
-        DeliveryOptions options = new DeliveryOptions().addHeader("method", action);
-        vertx.eventBus().send("corese", quad, options);
+        String quad = createQuad(topic, subject, predicate, object);
         
-        routingContext.response().setStatusCode(200).end();
+        DeliveryOptions options = new DeliveryOptions().addHeader("method", action)
+            .addHeader("topic", topic).setSendTimeout(updateTimeout);
+        
+        vertx.eventBus().request("corese", quad, options, ar -> {
+          if (wait) {
+            if (ar.succeeded()) {
+              routingContext.response().setStatusCode(200).end();
+            } else if (isTimeout(ar.cause())) {
+              // The update is still queued and will be applied
+              routingContext.response().setStatusCode(202).end();
+            } else {
+              routingContext.response().setStatusCode(500).end(ar.cause().getMessage());
+            }
+          }
+        });
+        
+        if (!wait) {
+          routingContext.response().setStatusCode(200).end();
+        }
       } else {
         routingContext.response().setStatusCode(400).end();
       }
     });
     
+    router.get("/sparql").handler(this::handleQuery);
+    
+    router.post("/sparql").consumes("application/sparql-query").handler((routingContext) -> {
+      sendQuery(routingContext, routingContext.getBodyAsString());
+    });
+    
+    router.post("/sparql").consumes("application/x-www-form-urlencoded").handler(this::handleQuery);
+    
     return router;
   }
   
+  private void rejectRequest(RoutingContext routingContext) {
+    routingContext.response()
+      .setStatusCode(503)
+      .putHeader("Retry-After", String.valueOf(admissionControl.getRetryAfter()))
+      .end();
+  }
+  
+  /**
+   * Checks if a value can be safely used as an IRI reference in a SPARQL update, i.e. it is not empty 
+   * and does not contain whitespace or any of the characters not allowed in IRI references 
+   * (&lt;&gt;"{}|^`\).
+   */
+  static boolean isValidIri(String value) {
+    if (value == null || value.isEmpty()) {
+      return false;
+    }
+    
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      
+      if (c <= ' ' || "<>\"{}|^`\\".indexOf(c) >= 0) {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Checks if a request to the CoreseVerticle failed because no reply was received in time. Updates 
+   * that time out are not failed: they are still queued and will be applied.
+   */
+  static boolean isTimeout(Throwable cause) {
+    return cause instanceof ReplyException 
+        && ((ReplyException) cause).failureType() == ReplyFailure.TIMEOUT;
+  }
+  
+  static String createQuad(String topic, String subject, String predicate, String object) {
+    return "graph <" + topic + "> { <" + subject + "> <" + predicate + "> <" + object + "> . }";
+  }
+  
+  /**
+   * Handles publishers that stream updates over a WebSocket. Each text message is one update, and 
+   * acknowledgements are sent back as text messages.
+   */
+  private void handleWebSocketStream(RoutingContext routingContext) {
+    if (!"websocket".equalsIgnoreCase(routingContext.request().getHeader("Upgrade"))) {
+      routingContext.response().setStatusCode(400).end();
+      return;
+    }
+    
+    ServerWebSocket webSocket = routingContext.request().upgrade();
+    StreamingIngest.UpdateStream stream = streamingIngest.open(webSocket, webSocket, 
+        webSocket.remoteAddress().host(), reply -> webSocket.writeTextMessage(reply.encode()));
+    
+    webSocket.textMessageHandler(stream::handleRecord);
+    // Pending updates are still applied, but their replies can no longer be sent
+    webSocket.closeHandler(v -> {
+      stream.closeReplies();
+      stream.end(done -> {});
+    });
+  }
+  
+  /**
+   * Handles publishers that stream updates in a chunked HTTP request body as newline-delimited JSON. 
+   * Acknowledgements are streamed back in the response body, which ends after the last update in 
+   * the request was acknowledged.
+   */
+  private void handleChunkedStream(RoutingContext routingContext) {
+    HttpServerRequest request = routingContext.request();
+    HttpServerResponse response = routingContext.response()
+        .setChunked(true)
+        .putHeader("Content-Type", "application/x-ndjson");
+    
+    RecordParser parser = RecordParser.newDelimited("\n", request)
+        .maxRecordSize(streamMaxRecordSize);
+    StreamingIngest.UpdateStream stream = streamingIngest.open(parser, response, 
+        request.remoteAddress().host(), reply -> {
+          if (!response.closed()) {
+            response.write(reply.encode() + "\n");
+          }
+        });
+    
+    parser.handler(record -> stream.handleRecord(record.toString()));
+    parser.endHandler(v -> stream.end(done -> {
+      if (!response.closed()) {
+        response.end();
+      }
+    }));
+    // Raised if a record is larger than the maximum record size, the rest of the request is ignored
+    parser.exceptionHandler(e -> {
+      parser.handler(record -> {});
+      stream.end(done -> {
+        if (!response.closed()) {
+          response.end(new JsonObject().put("error", e.getMessage()).encode() + "\n");
+        }
+      });
+    });
+    response.closeHandler(v -> stream.closeReplies());
+  }
+  
+  /**
+   * Attaches a subscriber's notification stream, either a WebSocket or Server-Sent Events. The 
+   * stream is identified by the IRI of a registered subscription. Streams that do not keep up with 
+   * notifications are closed. Subscribers can resume a stream after a reconnect from a given 
+   * sequence number, provided via the `from` query parameter or, for Server-Sent Events, via the 
+   * `Last-Event-ID` header.
+   */
+  private void handleNotificationStream(RoutingContext routingContext) {
+    HttpServerRequest request = routingContext.request();
+    String subscriptionIri = request.getParam("subscription");
+    long fromSeq;
+    
+    try {
+      if (request.getHeader("Last-Event-ID") != null) {
+        fromSeq = Long.parseLong(request.getHeader("Last-Event-ID")) + 1;
+      } else {
+        fromSeq = (request.getParam("from") == null) ? 0 : Long.parseLong(request.getParam("from"));
+      }
+    } catch (NumberFormatException e) {
+      routingContext.response().setStatusCode(400).end();
+      return;
+    }
+    
+    if (subscriptionIri == null || subscriptionIri.isEmpty()) {
+      routingContext.response().setStatusCode(400).end();
+    } else if (!NotificationStreams.isRegistered(subscriptionIri)) {
+      routingContext.response().setStatusCode(404).end();
+    } else if ("websocket".equalsIgnoreCase(request.getHeader("Upgrade"))) {
+      ServerWebSocket webSocket = request.upgrade();
+      AtomicBoolean closed = new AtomicBoolean(false);
+      NotificationStreams.Subscription subscription = NotificationStreams.attach(subscriptionIri, 
+          fromSeq, vertx.getOrCreateContext(), notification -> {
+            if (closed.get()) {
+              return;
+            }
+            
+            // Slow subscribers are disconnected, they can resume from the last notification received
+            if (webSocket.writeQueueFull()) {
+              webSocket.close();
+            } else {
+              webSocket.writeTextMessage(notification.encode());
+            }
+          });
+      
+      webSocket.closeHandler(v -> {
+        closed.set(true);
+        subscription.detach();
+      });
+    } else {
+      HttpServerResponse response = routingContext.response()
+          .setChunked(true)
+          .putHeader("Content-Type", "text/event-stream")
+          .putHeader("Cache-Control", "no-cache");
+      
+      // Send the headers right away, notifications might arrive much later
+      response.write(": connected\n\n");
+      
+      NotificationStreams.Subscription subscription = NotificationStreams.attach(subscriptionIri, 
+          fromSeq, vertx.getOrCreateContext(), notification -> {
+            if (response.closed()) {
+              return;
+            }
+            
+            if (response.writeQueueFull()) {
+              response.close();
+            } else {
+              response.write("id: " + notification.getLong("seq") + "\ndata: " 
+                  + notification.encode() + "\n\n");
+            }
+          });
+      
+      response.closeHandler(v -> subscription.detach());
+    }
+  }
+  
+  /**
+   * Handles query requests that provide the query as a URL or form parameter (see the SPARQL 1.1 
+   * Protocol).
+   */
+  private void handleQuery(RoutingContext routingContext) {
+    String query = routingContext.request().getParam("query");
+    
+    if (query == null || query.isEmpty()) {
+      routingContext.response().setStatusCode(400).end();
+    } else {
+      sendQuery(routingContext, query);
+    }
+  }
+  
+  private void sendQuery(RoutingContext routingContext, String query) {
+    DeliveryOptions options = new DeliveryOptions().addHeader("method", "query");
+    
+    vertx.eventBus().<String>request("corese", query, options, ar -> {
+      if (ar.succeeded()) {
+        routingContext.response()
+          .setStatusCode(200)
+          .putHeader("Content-Type", ar.result().headers().get("Content-Type"))
+          .end(ar.result().body());
+      } else if (ar.cause() instanceof ReplyException 
+          && ((ReplyException) ar.cause()).failureType() == ReplyFailure.RECIPIENT_FAILURE) {
+        routingContext.response()
+          .setStatusCode(((ReplyException) ar.cause()).failureCode())
+          .end(ar.cause().getMessage());
+      } else {
+        LOGGER.info("Query evaluation failed: " + ar.cause().getMessage());
+        routingContext.response().setStatusCode(500).end();
+      }
+    });
+  }
+  
 }
@@ -0,0 +1,238 @@
+package org.hyperagents.rdfsub.api;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Applies data updates received from publishers over long-lived streams (WebSockets or chunked HTTP
+ * requests). Each record in a stream is a JSON object that describes one update, e.g.:
+ *
+ *     {"seq": 1, "action": "insert", "topic": "http://hyperagents.org/",
+ *      "subject": "...", "predicate": "...", "object": "..."}
+ *
+ * Updates are acknowledged by sequence number once they were applied ({"ack": 1}), or rejected with
+ * an error ({"seq": 1, "error": "..."}). Updates that were not applied before the send timeout are
+ * still queued by the CoreseVerticle and are reported as pending ({"seq": 1, "pending": true}),
+ * without a later acknowledgement. All streams are paused while the backlog of updates not yet
+ * applied by the CoreseVerticle is above a high-water mark, and are resumed once the backlog drops
+ * below half of the high-water mark. A stream is also paused while the write queue of its replies is
+ * full, i.e. the publisher does not read the replies. Updates that are not admitted by the {@link AdmissionControl}
+ * are rejected with an error that also includes the number of seconds after which they can be
+ * retried ({"seq": 1, "error": "...", "retryAfter": 1}).
+ *
+ * This class is not thread-safe and must only be used from the context of the HTTP API verticle.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+class StreamingIngest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamingIngest.class.getName());
+
+  private final Vertx vertx;
+  private final AdmissionControl admissionControl;
+  private final int highWaterMark;
+  private final int lowWaterMark;
+  private final long updateTimeout;
+
+  private final Set<UpdateStream> pausedStreams = new HashSet<UpdateStream>();
+
+  /**
+   * A stream of updates opened by a publisher.
+   */
+  class UpdateStream {
+    private final ReadStream<?> source;
+    private final WriteStream<?> replies;
+    private final String publisher;
+    private final Handler<JsonObject> replyHandler;
+
+    private int pending = 0;
+    private Handler<Void> endHandler = null;
+    private boolean repliesFull = false;
+    private boolean repliesClosed = false;
+
+    private UpdateStream(ReadStream<?> source, WriteStream<?> replies, String publisher,
+        Handler<JsonObject> replyHandler) {
+      this.source = source;
+      this.replies = replies;
+      this.publisher = publisher;
+      this.replyHandler = replyHandler;
+    }
+
+    /**
+     * Parses and applies a record received on this stream.
+     *
+     * @param record the JSON representation of the update
+     */
+    void handleRecord(String record) {
+      if (record.trim().isEmpty()) {
+        return;
+      }
+
+      JsonObject update;
+
+      try {
+        update = new JsonObject(record);
+      } catch (DecodeException e) {
+        reply(new JsonObject().put("error", "Malformed update: " + e.getMessage()));
+        return;
+      }
+
+      Long seq = update.getLong("seq");
+      String action = update.getString("action");
+      String topic = update.getString("topic");
+      String subject = update.getString("subject");
+      String predicate = update.getString("predicate");
+      String object = update.getString("object");
+
+      if (seq == null || topic == null || subject == null || predicate == null || object == null
+          || !("insert".equals(action) || "delete".equals(action))) {
+        reply(new JsonObject().put("seq", seq).put("error", "Invalid update."));
+        return;
+      }
+
+      if (!HttpAPIVerticle.isValidIri(topic) || !HttpAPIVerticle.isValidIri(subject)
+          || !HttpAPIVerticle.isValidIri(predicate) || !HttpAPIVerticle.isValidIri(object)) {
+        reply(new JsonObject().put("seq", seq).put("error", "Invalid IRI."));
+        return;
+      }
+
+      if (admissionControl.isOverloaded() || !admissionControl.tryAcquire(publisher, topic)) {
+        reply(new JsonObject().put("seq", seq).put("error", "Update not admitted.")
+            .put("retryAfter", admissionControl.getRetryAfter()));
+        return;
+      }
+
+      String quad = HttpAPIVerticle.createQuad(topic, subject, predicate, object);
+      DeliveryOptions options = new DeliveryOptions().addHeader("method", action)
+          .addHeader("topic", topic).setSendTimeout(updateTimeout);
+
+      pending++;
+
+      if (admissionControl.getBacklog() > highWaterMark && pausedStreams.add(this)) {
+        source.pause();
+      }
+
+      vertx.eventBus().request("corese", quad, options, ar -> {
+        pending--;
+
+        if (ar.succeeded()) {
+          reply(new JsonObject().put("ack", seq));
+        } else if (HttpAPIVerticle.isTimeout(ar.cause())) {
+          reply(new JsonObject().put("seq", seq).put("pending", true));
+        } else {
+          LOGGER.info("Streamed update " + seq + " failed: " + ar.cause().getMessage());
+          reply(new JsonObject().put("seq", seq).put("error", ar.cause().getMessage()));
+        }
+
+        resumeIfDrained();
+
+        if (pending == 0 && endHandler != null) {
+          endHandler.handle(null);
+          endHandler = null;
+        }
+      });
+    }
+
+    /**
+     * Stops sending replies on this stream, e.g. because the connection was closed.
+     */
+    void closeReplies() {
+      repliesClosed = true;
+    }
+
+    /**
+     * Closes this stream once all pending updates were applied.
+     *
+     * @param handler called after the last update on this stream was acknowledged
+     */
+    void end(Handler<Void> handler) {
+      pausedStreams.remove(this);
+
+      if (pending == 0) {
+        handler.handle(null);
+      } else {
+        endHandler = handler;
+      }
+    }
+
+    private void reply(JsonObject reply) {
+      if (repliesClosed) {
+        return;
+      }
+
+      replyHandler.handle(reply);
+
+      if (!repliesFull && replies.writeQueueFull()) {
+        repliesFull = true;
+        source.pause();
+
+        replies.drainHandler(v -> {
+          repliesFull = false;
+
+          if (!pausedStreams.contains(this)) {
+            source.resume();
+          }
+        });
+      }
+    }
+
+    private void resume() {
+      if (!repliesFull) {
+        source.resume();
+      }
+    }
+  }
+
+  /**
+   * Creates a new streaming ingest.
+   *
+   * @param vertx the Vert.x instance used to send updates to the CoreseVerticle
+   * @param admissionControl the admission control that keeps track of the backlog
+   * @param highWaterMark the backlog size above which streams are paused
+   * @param updateTimeout the time in milliseconds after which updates are reported as pending
+   */
+  StreamingIngest(Vertx vertx, AdmissionControl admissionControl, int highWaterMark,
+      long updateTimeout) {
+    this.vertx = vertx;
+    this.admissionControl = admissionControl;
+    this.highWaterMark = highWaterMark;
+    this.lowWaterMark = highWaterMark / 2;
+    this.updateTimeout = updateTimeout;
+  }
+
+  /**
+   * Resumes all paused streams if the backlog dropped below the low-water mark. Besides being called
+   * whenever a streamed update completes, this method should be called periodically: updates that
+   * timed out and updates not sent over streams also drain the backlog.
+   */
+  void resumeIfDrained() {
+    if (admissionControl.getBacklog() <= lowWaterMark && !pausedStreams.isEmpty()) {
+      pausedStreams.forEach(UpdateStream::resume);
+      pausedStreams.clear();
+    }
+  }
+
+  /**
+   * Opens a stream of updates.
+   *
+   * @param source the stream to be paused and resumed for backpressure
+   * @param replies the stream the replies are written to by the reply handler
+   * @param publisher the identifier of the publisher used for rate quotas
+   * @param replyHandler called with the acknowledgement or error for each update
+   * @return the opened stream
+   */
+  UpdateStream open(ReadStream<?> source, WriteStream<?> replies, String publisher,
+      Handler<JsonObject> replyHandler) {
+    return new UpdateStream(source, replies, publisher, replyHandler);
+  }
+}
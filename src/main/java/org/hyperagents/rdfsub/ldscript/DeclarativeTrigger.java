@@ -0,0 +1,225 @@
+package org.hyperagents.rdfsub.ldscript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.api.Loader;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.kgram.api.core.Edge;
+import fr.inria.corese.kgram.core.Mapping;
+import fr.inria.corese.kgram.core.Mappings;
+import fr.inria.corese.sparql.api.IDatatype;
+import fr.inria.corese.sparql.exceptions.EngineException;
+
+/**
+ * A triggering function described declaratively in RDF as a set of quad patterns. Declarative
+ * triggers are compiled into Java matchers and are evaluated inline, without going through the
+ * LDScript interpreter. A trigger fires if any of its patterns matches a deleted or inserted quad.
+ *
+ * Sample trigger that fires whenever a triple with the predicate foaf:knows is inserted in the
+ * topic graph http://hyperagents.org/ (all properties except the type are optional):
+ *
+ *     [] a us:TriggerPattern ;
+ *       us:event us:Insert ;
+ *       us:graph &lt;http://hyperagents.org/&gt; ;
+ *       us:predicate foaf:knows .
+ *
+ * The event can be either us:Insert, us:Delete, or us:Any (default).
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+public class DeclarativeTrigger {
+  public static final String US_NS = "http://ns.inria.fr/sparql-extension/user/";
+
+  private static final Map<String, DeclarativeTrigger> REGISTRY =
+      new ConcurrentHashMap<String, DeclarativeTrigger>();
+
+  private final List<QuadPattern> patterns;
+
+  /**
+   * The type of data update a quad pattern applies to.
+   */
+  public enum Event {
+    INSERT, DELETE, ANY;
+
+    static Event fromIri(String iri) {
+      if (iri == null || iri.equals(US_NS + "Any")) {
+        return ANY;
+      } else if (iri.equals(US_NS + "Insert")) {
+        return INSERT;
+      } else if (iri.equals(US_NS + "Delete")) {
+        return DELETE;
+      }
+
+      throw new IllegalArgumentException("Unknown trigger event: " + iri);
+    }
+  }
+
+  /**
+   * A quad pattern used in a declarative trigger. Terms that are not specified (i.e., null) match
+   * any value. Specified terms are compared as RDF terms, i.e. literals only match if their lexical
+   * forms, datatypes, and language tags are the same.
+   */
+  public static class QuadPattern {
+    private final Event event;
+    private final IDatatype graph;
+    private final IDatatype subject;
+    private final IDatatype predicate;
+    private final IDatatype object;
+
+    public QuadPattern(Event event, IDatatype graph, IDatatype subject, IDatatype predicate,
+        IDatatype object) {
+      this.event = event;
+      this.graph = graph;
+      this.subject = subject;
+      this.predicate = predicate;
+      this.object = object;
+    }
+
+    boolean appliesTo(Event event) {
+      return this.event == Event.ANY || this.event == event;
+    }
+
+    boolean matches(IDatatype g, IDatatype s, IDatatype p, IDatatype o) {
+      return matchesTerm(graph, g) && matchesTerm(subject, s) && matchesTerm(predicate, p)
+          && matchesTerm(object, o);
+    }
+
+    private static boolean matchesTerm(IDatatype expected, IDatatype actual) {
+      return expected == null || (actual != null && expected.sameTerm(actual));
+    }
+  }
+
+  DeclarativeTrigger(List<QuadPattern> patterns) {
+    this.patterns = Collections.unmodifiableList(patterns);
+  }
+
+  /**
+   * Compiles the RDF description of a declarative trigger.
+   *
+   * @param representation the description of the trigger serialized in Turtle
+   * @return the compiled trigger
+   * @throws LoadException if the description cannot be parsed
+   * @throws EngineException if the quad patterns cannot be extracted from the description
+   * @throws IllegalArgumentException if the description does not contain any valid quad pattern
+   */
+  public static DeclarativeTrigger compile(String representation) throws LoadException,
+      EngineException {
+    Graph data = Graph.create();
+    Load.create(data).loadString(representation, Loader.TURTLE_FORMAT);
+
+    String query = "select ?event ?graph ?subject ?predicate ?object where { "
+        + "?pattern a us:TriggerPattern "
+        + "optional { ?pattern us:event ?event } "
+        + "optional { ?pattern us:graph ?graph } "
+        + "optional { ?pattern us:subject ?subject } "
+        + "optional { ?pattern us:predicate ?predicate } "
+        + "optional { ?pattern us:object ?object } }";
+
+    Mappings result = QueryProcess.create(data).query(query);
+    List<QuadPattern> patterns = new ArrayList<QuadPattern>();
+
+    for (Mapping mapping : result) {
+      IDatatype event = mapping.getValue("?event");
+
+      patterns.add(new QuadPattern(Event.fromIri(event == null ? null : event.getLabel()),
+          mapping.getValue("?graph"), mapping.getValue("?subject"),
+          mapping.getValue("?predicate"), mapping.getValue("?object")));
+    }
+
+    if (patterns.isEmpty()) {
+      throw new IllegalArgumentException("The trigger does not define any us:TriggerPattern.");
+    }
+
+    return new DeclarativeTrigger(patterns);
+  }
+
+  /**
+   * Registers a compiled trigger under the IRI used by subscriptions to reference it. A previously
+   * registered trigger with the same IRI is replaced.
+   *
+   * @param triggerIri the IRI of the trigger
+   * @param trigger the compiled trigger
+   */
+  public static void register(String triggerIri, DeclarativeTrigger trigger) {
+    REGISTRY.put(triggerIri, trigger);
+  }
+
+  /**
+   * Removes a compiled trigger from the registry, e.g. if the trigger is now defined in LDScript.
+   *
+   * @param triggerIri the IRI of the trigger
+   */
+  public static void unregister(String triggerIri) {
+    REGISTRY.remove(triggerIri);
+  }
+
+  /**
+   * Retrieves a compiled trigger.
+   *
+   * @param triggerIri the IRI of the trigger
+   * @return the compiled trigger if one was registered, an empty optional otherwise
+   */
+  public static Optional<DeclarativeTrigger> lookup(String triggerIri) {
+    return Optional.ofNullable(REGISTRY.get(triggerIri));
+  }
+
+  /**
+   * Evaluates the trigger against a data update.
+   *
+   * @param del the triples deleted with this data update
+   * @param ins the triples inserted with this data update
+   * @return true if any of the trigger's patterns matches the update, false otherwise
+   */
+  public boolean matches(IDatatype del, IDatatype ins) {
+    return matchesAny(Event.DELETE, del) || matchesAny(Event.INSERT, ins);
+  }
+
+  /**
+   * Evaluates the trigger against a single deleted or inserted quad.
+   *
+   * @param event either Event.INSERT or Event.DELETE
+   * @param g the graph of the quad (can be null)
+   * @param s the subject of the quad
+   * @param p the predicate of the quad
+   * @param o the object of the quad
+   * @return true if any of the trigger's patterns matches the quad, false otherwise
+   */
+  public boolean matches(Event event, IDatatype g, IDatatype s, IDatatype p, IDatatype o) {
+    for (QuadPattern pattern : patterns) {
+      if (pattern.appliesTo(event) && pattern.matches(g, s, p, o)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean matchesAny(Event event, IDatatype edges) {
+    if (edges == null || !edges.isList()) {
+      return false;
+    }
+
+    for (IDatatype dt : edges.getValueList()) {
+      if (dt.getPointerObject() instanceof Edge) {
+        Edge edge = (Edge) dt.getPointerObject();
+        IDatatype g = (edge.getGraph() == null) ? null : edge.getGraph().getDatatypeValue();
+
+        if (matches(event, g, edge.getNode(0).getDatatypeValue(),
+            edge.getEdgeNode().getDatatypeValue(), edge.getNode(1).getDatatypeValue())) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+}
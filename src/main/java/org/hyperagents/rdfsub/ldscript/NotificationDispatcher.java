@@ -1,12 +1,25 @@
 package org.hyperagents.rdfsub.ldscript;
 
+import java.util.function.Supplier;
+
+import org.hyperagents.rdfsub.tracing.NotificationSendEvent;
+import org.hyperagents.rdfsub.tracing.NotificationSerializationEvent;
+import org.hyperagents.rdfsub.tracing.QueryEvaluationEvent;
+import org.hyperagents.rdfsub.tracing.Tracing;
+
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.print.ResultFormat;
+import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.core.transform.Transformer;
 import fr.inria.corese.kgram.api.core.ExpType;
 import fr.inria.corese.kgram.core.Mappings;
 import fr.inria.corese.sparql.api.IDatatype;
 import fr.inria.corese.sparql.datatype.DatatypeMap;
+import fr.inria.corese.sparql.exceptions.EngineException;
+import fr.inria.corese.sparql.triple.javacc1.ParserSparql1;
+import fr.inria.corese.sparql.triple.parser.ASTQuery;
+import fr.inria.corese.sparql.triple.parser.Access;
+import fr.inria.corese.sparql.triple.parser.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
@@ -15,9 +28,9 @@ import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
 
 /**
- * Class used to dispatch notifications to subscribers. The current implementation sends the 
- * notifications to registered callback IRIs via HTTP POST. The payload of a notification is a result 
- * to a registered query:
+ * Class used to dispatch notifications to subscribers. Notifications are sent to registered callback 
+ * IRIs via HTTP POST, unless the subscriber attached a persistent stream for the subscription (see 
+ * {@link NotificationStreams}). The payload of a notification is a result to a registered query:
  * - for a CONSTRUCT query, the payload is serialized and sent as `text/turtle`
  * - for a SELECT query, the payload is serialized and sent as `application/sparql-results+xml`
  * 
@@ -27,6 +40,22 @@ import io.vertx.ext.web.client.WebClient;
 public class NotificationDispatcher {
   private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class.getName());
   
+  private static Vertx vertx = null;
+  
+  /**
+   * Sets the Vert.x instance used to send notifications from threads that are not managed by Vert.x 
+   * (e.g., virtual threads).
+   * 
+   * @param vertx the Vert.x instance of the hub
+   */
+  public static synchronized void setVertx(Vertx vertx) {
+    NotificationDispatcher.vertx = vertx;
+  }
+  
+  private static synchronized Vertx getVertx() {
+    return (Vertx.currentContext() == null) ? vertx : Vertx.currentContext().owner();
+  }
+  
   /**
    * This method is called from LDscript to send notifications to subscribers whenever new results
    * are available for registered queries.
@@ -36,49 +65,161 @@ public class NotificationDispatcher {
    * @return true if the result is a variable mapping or a graph, false otherwise 
    */
   public static IDatatype notifySubscriber(IDatatype callbackIri, IDatatype result) {
-    String notification;
-    
     // TODO: mappings data type constant?
     if (result.isLiteral() && result.getDatatypeURI().equals(ExpType.DT + "mappings")) {
-      Mappings m = ((Mappings) result.getPointerObject());
-      notification = ResultFormat.format(m).toString();
+      dispatch(null, callbackIri.stringValue(), (Mappings) result.getPointerObject());
     } else if (result.isLiteral() && result.getDatatypeURI().equals(IDatatype.GRAPH_DATATYPE)) {
-      Graph graph = (Graph) result.getPointerObject();
-      notification = Transformer.turtle(graph);
+      dispatch(null, callbackIri.stringValue(), "text/turtle", 
+          () -> Transformer.turtle((Graph) result.getPointerObject()));
     } else {
       return DatatypeMap.FALSE;
     }
     
-    sendHTTPNotification(callbackIri.stringValue(), result.getDatatypeURI(), notification);
+    return DatatypeMap.TRUE;
+  }
+  
+  /**
+   * This method is called from LDscript to evaluate the registered query of a subscription and to 
+   * send the result to the subscriber. Registered queries are evaluated with a public access context 
+   * (the lowest access level specified in Corese) and cannot define functions. The evaluation of the 
+   * query, the serialization of the result, and the notification are traced with JFR events (see 
+   * {@link Tracing}).
+   * 
+   * @param subscription the IRI of the subscription
+   * @param callbackIri the callback IRI registered by the subscriber (empty for subscriptions that 
+   * only use streams)
+   * @param query the registered query
+   * @return true if the query was evaluated, false otherwise 
+   */
+  public static IDatatype notifySubscriber(IDatatype subscription, IDatatype callbackIri, 
+      IDatatype query) {
+    QueryEvaluationEvent event = Tracing.isSampled() ? new QueryEvaluationEvent() : null;
+    Mappings result;
+    
+    if (event != null) {
+      event.begin();
+    }
+    
+    try {
+      // The query is only parsed at this point: compiling it would export the functions it
+      // defines, which could replace the functions of the hub or the triggers of subscribers
+      ASTQuery ast = ASTQuery.create(query.stringValue());
+      ParserSparql1.create(ast).parse();
+      
+      if (ast.isUpdate() || !ast.getDefine().isEmpty() || !ast.getDefineLambda().isEmpty()) {
+        LOGGER.info("The query of " + subscription.getLabel() + " is not a read query or defines "
+            + "functions");
+        return DatatypeMap.FALSE;
+      }
+      
+      Context context = new Context();
+      context.setLevel(Access.Level.PUBLIC);
+      result = QueryProcess.create(Sandbox.singleton().getGraph()).query(query.stringValue(), 
+          context);
+    } catch (EngineException e) {
+      LOGGER.info("Evaluating the query of " + subscription.getLabel() + " failed: " 
+          + e.getMessage());
+      return DatatypeMap.FALSE;
+    }
+    
+    if (event != null) {
+      event.end();
+      
+      if (event.shouldCommit()) {
+        event.subscription = subscription.getLabel();
+        event.results = result.size();
+        event.commit();
+      }
+    }
+    
+    dispatch(subscription.getLabel(), callbackIri.stringValue(), result);
     
     return DatatypeMap.TRUE;
   }
   
-  private static void sendHTTPNotification(String callbackIri, String datatype, String payload) {
-    WebClient webClient = WebClient.create(Vertx.currentContext().owner());
-    HttpRequest<Buffer> request = webClient.postAbs(callbackIri);
+  private static void dispatch(String subscription, String callbackIri, Mappings result) {
+    if (result.getGraph() != null) {
+      dispatch(subscription, callbackIri, "text/turtle", 
+          () -> Transformer.turtle((Graph) result.getGraph()));
+    } else {
+      dispatch(subscription, callbackIri, "application/sparql-results+xml", 
+          () -> ResultFormat.format(result).toString());
+    }
+  }
+  
+  private static void dispatch(String subscription, String callbackIri, String contentType, 
+      Supplier<String> serializer) {
+    boolean sampled = Tracing.isSampled();
+    NotificationSerializationEvent serializationEvent = sampled 
+        ? new NotificationSerializationEvent() : null;
+    
+    if (serializationEvent != null) {
+      serializationEvent.begin();
+    }
+    
+    String notification = serializer.get();
+    
+    if (serializationEvent != null) {
+      serializationEvent.end();
+      
+      if (serializationEvent.shouldCommit()) {
+        serializationEvent.subscription = subscription;
+        serializationEvent.contentType = contentType;
+        serializationEvent.size = notification.length();
+        serializationEvent.commit();
+      }
+    }
+    
+    NotificationSendEvent sendEvent = sampled ? new NotificationSendEvent() : null;
     
-    if (datatype.equals(IDatatype.GRAPH_DATATYPE)) {
-      request.putHeader("Content-Type", "text/turtle");
+    if (sendEvent != null) {
+      sendEvent.begin();
+      sendEvent.subscription = subscription;
+      sendEvent.callback = callbackIri;
+    }
+    
+    if (NotificationStreams.deliver(subscription, contentType, notification)) {
+      commitSendEvent(sendEvent, "stream", 0);
+    } else if (callbackIri.isEmpty()) {
+      commitSendEvent(sendEvent, "none", 0);
+      LOGGER.info("Dropped notification for " + subscription + " (no stream or callback IRI)");
     } else {
-      request.putHeader("Content-Type", "application/sparql-results+xml");
+      sendHTTPNotification(callbackIri, contentType, notification, sendEvent);
     }
+  }
+  
+  private static void sendHTTPNotification(String callbackIri, String contentType, String payload, 
+      NotificationSendEvent event) {
+    WebClient webClient = WebClient.create(getVertx());
+    HttpRequest<Buffer> request = webClient.postAbs(callbackIri);
+    request.putHeader("Content-Type", contentType);
     
     request.sendBuffer(Buffer.buffer(payload), ar -> {
       if (ar.succeeded()) {
         int statusCode = ar.result().statusCode();
+        commitSendEvent(event, "http", statusCode);
         
-        if (statusCode >= 200 && statusCode < 300) {
-          LOGGER.info("Sent notification to " + callbackIri + " with payload:\n" + payload);
-        } else {
+        if (statusCode < 200 || statusCode >= 300) {
           LOGGER.info("Failed to send notification to " + callbackIri + " (status code: " 
-              + statusCode + "). Payload:\n" + payload);
+              + statusCode + ")");
         }
       } else {
-        LOGGER.info("Failed to send notification to " + callbackIri + " (unreachable). Payload:\n" 
-            + payload);
+        commitSendEvent(event, "http", 0);
+        LOGGER.info("Failed to send notification to " + callbackIri + " (unreachable)");
       }
     });
   }
   
+  private static void commitSendEvent(NotificationSendEvent event, String channel, int statusCode) {
+    if (event != null) {
+      event.end();
+      
+      if (event.shouldCommit()) {
+        event.channel = channel;
+        event.statusCode = statusCode;
+        event.commit();
+      }
+    }
+  }
+  
 }
@@ -0,0 +1,223 @@
+package org.hyperagents.rdfsub.ldscript;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Registry of persistent notification streams (e.g., WebSockets or Server-Sent Events) attached by
+ * subscribers. Streams are identified by the IRI of the subscription, which is a capability IRI
+ * generated by the hub: only subscriptions registered with
+ * {@link #registerSubscription(String, boolean)} accept streams. Once a stream was attached for a
+ * subscription, all its notifications are delivered over streams instead of HTTP POST, including
+ * while the subscriber is disconnected.
+ *
+ * Each notification is assigned a sequence number, and the most recent notifications are buffered so
+ * that subscribers can resume from a given sequence number after a reconnect. The buffers of
+ * subscriptions without attached streams for a while are dropped with
+ * {@link #pruneIdleChannels(long)}, and their notifications are sent via HTTP POST again.
+ * Subscriptions without a callback IRI only use streams, and their buffers are never dropped.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+public class NotificationStreams {
+  public static final int DEFAULT_BUFFER_SIZE = 100;
+
+  private static final Set<String> SUBSCRIPTIONS = ConcurrentHashMap.newKeySet();
+  private static final Map<String, Channel> CHANNELS = new ConcurrentHashMap<String, Channel>();
+  private static volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+  /**
+   * A stream attached by a subscriber.
+   */
+  public static class Subscription {
+    private final Channel channel;
+    private final Object sink;
+
+    private Subscription(Channel channel, Object sink) {
+      this.channel = channel;
+      this.sink = sink;
+    }
+
+    /**
+     * Detaches the stream. Notifications are still buffered for the subscriber to resume later.
+     */
+    public void detach() {
+      synchronized (channel) {
+        if (channel.sinks.remove(sink) != null && channel.sinks.isEmpty()) {
+          channel.idleSince = System.currentTimeMillis();
+        }
+      }
+    }
+  }
+
+  private static class Channel {
+    private long nextSeq = 1;
+    private final Deque<JsonObject> buffer = new ArrayDeque<JsonObject>();
+    private final Map<Object, Sink> sinks = new HashMap<Object, Sink>();
+    private long idleSince = System.currentTimeMillis();
+    // Set once the channel was pruned, streams are then attached to a new channel
+    private boolean removed = false;
+    // Channels of subscriptions without a callback IRI are never pruned
+    private final boolean persistent;
+
+    private Channel(boolean persistent) {
+      this.persistent = persistent;
+    }
+  }
+
+  private static class Sink {
+    private final Context context;
+    private final Handler<JsonObject> handler;
+
+    private Sink(Context context, Handler<JsonObject> handler) {
+      this.context = context;
+      this.handler = handler;
+    }
+
+    private void send(JsonObject notification) {
+      context.runOnContext(v -> handler.handle(notification));
+    }
+  }
+
+  /**
+   * Sets the number of notifications buffered per subscription for resuming streams.
+   *
+   * @param size the size of the buffer
+   */
+  public static void setBufferSize(int size) {
+    bufferSize = size;
+  }
+
+  /**
+   * Registers a subscription for which streams can be attached. This method should be called once
+   * the subscription was saved.
+   *
+   * @param subscriptionIri the IRI of the subscription
+   * @param streamOnly true if the subscription does not have a callback IRI, in which case its
+   * notifications are buffered right away
+   */
+  public static void registerSubscription(String subscriptionIri, boolean streamOnly) {
+    SUBSCRIPTIONS.add(subscriptionIri);
+
+    if (streamOnly) {
+      CHANNELS.put(subscriptionIri, new Channel(true));
+    }
+  }
+
+  /**
+   * Checks if a subscription was registered.
+   *
+   * @param subscriptionIri the IRI of the subscription
+   * @return true if streams can be attached for the subscription, false otherwise
+   */
+  public static boolean isRegistered(String subscriptionIri) {
+    return subscriptionIri != null && SUBSCRIPTIONS.contains(subscriptionIri);
+  }
+
+  /**
+   * Attaches a stream for a given subscription. Buffered notifications with a sequence number greater
+   * than or equal to fromSeq are replayed before any new notification.
+   *
+   * @param subscriptionIri the IRI of the subscription
+   * @param fromSeq the sequence number to resume from (0 to receive only new notifications)
+   * @param context the Vert.x context on which the handler is called
+   * @param handler called with each notification
+   * @return the attached stream
+   * @throws IllegalArgumentException if the subscription was not registered
+   */
+  public static Subscription attach(String subscriptionIri, long fromSeq, Context context,
+      Handler<JsonObject> handler) {
+    if (!isRegistered(subscriptionIri)) {
+      throw new IllegalArgumentException("Unknown subscription: " + subscriptionIri);
+    }
+
+    Object key = new Object();
+    Sink sink = new Sink(context, handler);
+
+    while (true) {
+      Channel channel = CHANNELS.computeIfAbsent(subscriptionIri, iri -> new Channel(false));
+
+      synchronized (channel) {
+        if (channel.removed) {
+          continue;
+        }
+
+        if (fromSeq > 0) {
+          channel.buffer.stream()
+            .filter(notification -> notification.getLong("seq") >= fromSeq)
+            .forEach(sink::send);
+        }
+
+        channel.sinks.put(key, sink);
+        return new Subscription(channel, key);
+      }
+    }
+  }
+
+  /**
+   * Delivers a notification over the streams attached for a subscription. The notification is
+   * numbered and buffered even if no stream is currently attached, so that the subscriber receives
+   * it once it resumes its stream.
+   *
+   * @param subscriptionIri the IRI of the subscription (can be null)
+   * @param contentType the media type of the payload
+   * @param payload the serialized result of the registered query
+   * @return true if the subscription uses streams (the notification was delivered or buffered),
+   * false if the notification should be sent via HTTP POST
+   */
+  public static boolean deliver(String subscriptionIri, String contentType, String payload) {
+    Channel channel = (subscriptionIri == null) ? null : CHANNELS.get(subscriptionIri);
+
+    if (channel == null) {
+      return false;
+    }
+
+    synchronized (channel) {
+      if (channel.removed) {
+        return false;
+      }
+
+      JsonObject notification = new JsonObject()
+          .put("seq", channel.nextSeq++)
+          .put("contentType", contentType)
+          .put("payload", payload);
+
+      channel.buffer.addLast(notification);
+
+      while (channel.buffer.size() > bufferSize) {
+        channel.buffer.removeFirst();
+      }
+
+      channel.sinks.values().forEach(sink -> sink.send(notification));
+    }
+
+    return true;
+  }
+
+  /**
+   * Drops the buffered notifications of subscriptions without attached streams for a given time.
+   * Streams attached later on for these subscriptions start over from sequence number 1.
+   *
+   * @param maxIdleMillis the time in milliseconds after which a subscription without streams is idle
+   */
+  public static void pruneIdleChannels(long maxIdleMillis) {
+    long now = System.currentTimeMillis();
+
+    CHANNELS.values().removeIf(channel -> {
+      synchronized (channel) {
+        channel.removed = !channel.persistent && channel.sinks.isEmpty()
+            && now - channel.idleSince >= maxIdleMillis;
+        return channel.removed;
+      }
+    });
+  }
+}
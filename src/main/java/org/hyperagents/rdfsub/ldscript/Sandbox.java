@@ -1,5 +1,6 @@
 package org.hyperagents.rdfsub.ldscript;
 
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -8,11 +9,16 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.hyperagents.rdfsub.VirtualThreads;
+import org.hyperagents.rdfsub.tracing.Tracing;
+import org.hyperagents.rdfsub.tracing.TriggerEvaluationEvent;
+
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.load.LoadException;
 import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.sparql.api.IDatatype;
+import fr.inria.corese.sparql.datatype.DatatypeMap;
 import fr.inria.corese.sparql.exceptions.EngineException;
 import fr.inria.corese.sparql.triple.parser.Access;
 import fr.inria.corese.sparql.triple.parser.Context;
@@ -29,6 +35,7 @@ import io.vertx.core.logging.LoggerFactory;
 public class Sandbox {
   private static final Logger LOGGER = LoggerFactory.getLogger(Sandbox.class.getName());
   private static Sandbox instance = null;
+  private static volatile boolean virtualThreads = false;
   
   private final Graph graph;
   
@@ -73,6 +80,16 @@ public class Sandbox {
     return instance; 
   }
   
+  /**
+   * Configures whether triggering functions run on virtual threads instead of platform threads. 
+   * Timeouts and cancellation are the same in both cases.
+   * 
+   * @param enabled true to run triggering functions on virtual threads (requires JDK 21+)
+   */
+  public static void setVirtualThreads(boolean enabled) {
+    virtualThreads = enabled;
+  }
+  
   /**
    * Sets the access level for all LDScript features that can be accessed from triggering functions. 
    * Access levels are defined in Corese.
@@ -130,8 +147,43 @@ public class Sandbox {
   }
   
   /**
-   * Invokes a triggering function and returns the value. The invocation uses a public access context 
-   * (the lowest access level specified in Corese).
+   * Invokes the triggering function of a subscription and returns the value. This method is called 
+   * from LDScript and records a {@link TriggerEvaluationEvent} if the current update is traced.
+   * 
+   * @param subscription the subscription whose trigger is invoked
+   * @param trigger the triggering function
+   * @param del the triples deleted with this data update
+   * @param ins the triples inserted with this data update
+   * @return value returned by the triggering function
+   * @throws EngineException 
+   */
+  public IDatatype invokeTrigger(IDatatype subscription, IDatatype trigger, IDatatype del, 
+      IDatatype ins) throws EngineException {
+    if (!Tracing.isSampled()) {
+      return invokeTrigger(trigger.getLabel(), del, ins);
+    }
+    
+    TriggerEvaluationEvent event = new TriggerEvaluationEvent();
+    event.begin();
+    
+    IDatatype value = invokeTrigger(trigger.getLabel(), del, ins);
+    
+    event.end();
+    if (event.shouldCommit()) {
+      event.subscription = subscription.getLabel();
+      event.trigger = trigger.getLabel();
+      event.declarative = DeclarativeTrigger.lookup(trigger.getLabel()).isPresent();
+      event.fired = value != null && value.isBoolean() && value.booleanValue();
+      event.commit();
+    }
+    
+    return value;
+  }
+  
+  /**
+   * Invokes a triggering function and returns the value. Declarative triggers are evaluated inline 
+   * (see {@link DeclarativeTrigger}), all other triggers are invoked in LDScript using a public access 
+   * context (the lowest access level specified in Corese).
    * 
    * @param trigger the triggering function
    * @param del the triples deleted with this data update
@@ -139,7 +191,14 @@ public class Sandbox {
    * @return value returned by the triggering function
    */
   public IDatatype invokeTrigger(String trigger, IDatatype del, IDatatype ins) throws EngineException {
-    ExecutorService exec = Executors.newSingleThreadExecutor();
+    Optional<DeclarativeTrigger> declarative = DeclarativeTrigger.lookup(trigger);
+    
+    if (declarative.isPresent()) {
+      return declarative.get().matches(del, ins) ? DatatypeMap.TRUE : DatatypeMap.FALSE;
+    }
+    
+    ExecutorService exec = virtualThreads ? VirtualThreads.newThreadPerTaskExecutor() 
+        : Executors.newSingleThreadExecutor();
     
     Future<IDatatype> result = exec.submit(new Callable<IDatatype>() {
       
@@ -172,6 +231,10 @@ public class Sandbox {
     return null;
   }
   
+  Graph getGraph() {
+    return graph;
+  }
+  
   private Context createTriggerContext() {
     Context context = new Context();
     context.setLevel(Access.Level.PUBLIC);
@@ -0,0 +1,34 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for each notification sent to a subscriber. For notifications sent via HTTP POST, the
+ * duration lasts until the response is received.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.NotificationSend")
+@Label("Notification Send")
+@Category({ Tracing.CATEGORY, "Notifications" })
+@Description("A notification was sent to a subscriber")
+public class NotificationSendEvent extends Event {
+  @Label("Subscription")
+  public String subscription;
+
+  @Label("Callback")
+  public String callback;
+
+  @Label("Channel")
+  @Description("Either http or stream")
+  public String channel;
+
+  @Label("Status Code")
+  @Description("The status code of the HTTP response, or 0 if no response was received")
+  public int statusCode;
+}
@@ -0,0 +1,30 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for each serialization of a query result sent in a notification.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.NotificationSerialization")
+@Label("Notification Serialization")
+@Category({ Tracing.CATEGORY, "Notifications" })
+@Description("A query result was serialized for a notification")
+public class NotificationSerializationEvent extends Event {
+  @Label("Subscription")
+  public String subscription;
+
+  @Label("Content Type")
+  public String contentType;
+
+  @Label("Size")
+  @DataAmount
+  public long size;
+}
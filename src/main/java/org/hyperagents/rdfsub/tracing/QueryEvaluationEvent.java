@@ -0,0 +1,26 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for each evaluation of a subscription's registered query.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.QueryEvaluation")
+@Label("Query Evaluation")
+@Category({ Tracing.CATEGORY, "Subscriptions" })
+@Description("A registered query was evaluated after its trigger fired")
+public class QueryEvaluationEvent extends Event {
+  @Label("Subscription")
+  public String subscription;
+
+  @Label("Results")
+  @Description("The number of solutions returned by the query")
+  public int results;
+}
@@ -0,0 +1,94 @@
+package org.hyperagents.rdfsub.tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls the sampling of data updates traced with JDK Flight Recorder events. One in every N data
+ * updates is sampled, and all events related to a sampled update (trigger evaluations, query
+ * evaluations, notifications) are recorded. The sampling decision is bound to the thread that
+ * processes the update.
+ *
+ * The events are only recorded while a flight recording is running with the events enabled, e.g.:
+ *
+ *     jcmd &lt;pid&gt; JFR.start name=rdfsub settings=profile
+ *
+ * The hub is built for Java 8, so JFR might not be available at runtime (see {@link #isSupported()}).
+ * In that case no update is sampled, and the event classes are never loaded.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+public final class Tracing {
+  public static final String CATEGORY = "RDFSub Hub";
+
+  private static final AtomicLong UPDATE_COUNTER = new AtomicLong();
+  private static final ThreadLocal<Boolean> SAMPLED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  private static final boolean SUPPORTED = checkSupported();
+
+  private static volatile int samplingInterval = 1;
+
+  private Tracing() { }
+
+  /**
+   * Checks if the current JVM supports JFR custom events (JDK 11+, or 8u262+).
+   *
+   * @return true if the events can be recorded, false otherwise
+   */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * Sets the sampling interval for data updates.
+   *
+   * @param interval trace one in every interval data updates (1 to trace all updates)
+   */
+  public static void setSamplingInterval(int interval) {
+    samplingInterval = Math.max(interval, 1);
+  }
+
+  /**
+   * Decides whether a newly received data update is sampled. Updates are never sampled if JFR is not
+   * supported, so callers can safely create events for sampled updates only.
+   *
+   * @return true if the update should be traced, false otherwise
+   */
+  public static boolean sampleUpdate() {
+    return SUPPORTED && UPDATE_COUNTER.getAndIncrement() % samplingInterval == 0;
+  }
+
+  /**
+   * Binds the sampling decision for a data update to the current thread.
+   *
+   * @param sampled true if the update processed by the current thread is traced
+   */
+  public static void setSampled(boolean sampled) {
+    SAMPLED.set(sampled);
+  }
+
+  /**
+   * Removes the sampling decision bound to the current thread.
+   */
+  public static void clearSampled() {
+    SAMPLED.remove();
+  }
+
+  /**
+   * Checks if the data update processed by the current thread is traced.
+   *
+   * @return true if events should be recorded for the current update, false otherwise
+   */
+  public static boolean isSampled() {
+    return SAMPLED.get();
+  }
+
+  private static boolean checkSupported() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+}
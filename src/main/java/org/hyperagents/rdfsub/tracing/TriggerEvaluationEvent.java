@@ -0,0 +1,32 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for each evaluation of a subscription's triggering function.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.TriggerEvaluation")
+@Label("Trigger Evaluation")
+@Category({ Tracing.CATEGORY, "Subscriptions" })
+@Description("A triggering function was evaluated for a data update")
+public class TriggerEvaluationEvent extends Event {
+  @Label("Subscription")
+  public String subscription;
+
+  @Label("Trigger")
+  public String trigger;
+
+  @Label("Declarative")
+  @Description("True if the trigger was evaluated inline, false if it was invoked in LDScript")
+  public boolean declarative;
+
+  @Label("Fired")
+  public boolean fired;
+}
@@ -0,0 +1,29 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a data update is applied. The duration includes the processing of registered queries
+ * triggered by the update.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.UpdateCommit")
+@Label("Update Commit")
+@Category({ Tracing.CATEGORY, "Updates" })
+@Description("A data update was applied and registered queries were processed")
+public class UpdateCommitEvent extends Event {
+  @Label("Action")
+  public String action;
+
+  @Label("Topic")
+  public String topic;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+}
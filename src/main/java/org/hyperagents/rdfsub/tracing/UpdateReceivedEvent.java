@@ -0,0 +1,25 @@
+package org.hyperagents.rdfsub.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a data update is received by the CoreseVerticle.
+ *
+ * @author Andrei Ciortea, Interactions HSG
+ *
+ */
+@Name("org.hyperagents.rdfsub.UpdateReceived")
+@Label("Update Received")
+@Category({ Tracing.CATEGORY, "Updates" })
+@Description("A data update was received by the hub")
+public class UpdateReceivedEvent extends Event {
+  @Label("Action")
+  public String action;
+
+  @Label("Topic")
+  public String topic;
+}
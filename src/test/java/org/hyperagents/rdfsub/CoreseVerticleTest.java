@@ -0,0 +1,82 @@
+package org.hyperagents.rdfsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+class CoreseVerticleTest {
+  private static final String TOPIC = "http://hyperagents.org/";
+
+  @Test
+  @DisplayName("Test updates and queries run on the worker pool by default")
+  void testWorkerPoolMode(Vertx vertx, VertxTestContext testContext) {
+    CoreseVerticle verticle = new CoreseVerticle();
+
+    deploy(vertx, verticle, new JsonObject(), testContext, () -> {
+      assertFalse(verticle.usesVirtualThreads());
+      verifyUpdateAndQuery(vertx, testContext);
+    });
+  }
+
+  @Test
+  @DisplayName("Test updates and queries run on virtual threads if supported by the JVM")
+  void testVirtualThreadsMode(Vertx vertx, VertxTestContext testContext) {
+    CoreseVerticle verticle = new CoreseVerticle();
+    JsonObject config = new JsonObject().put("execution-mode", "virtual-threads");
+
+    deploy(vertx, verticle, config, testContext, () -> {
+      assertEquals(VirtualThreads.isSupported(), verticle.usesVirtualThreads());
+      verifyUpdateAndQuery(vertx, testContext);
+    });
+  }
+
+  @Test
+  @DisplayName("Test unknown execution modes fall back to the worker pool")
+  void testUnknownMode(Vertx vertx, VertxTestContext testContext) {
+    CoreseVerticle verticle = new CoreseVerticle();
+    JsonObject config = new JsonObject().put("execution-mode", "unknown");
+
+    deploy(vertx, verticle, config, testContext, () -> {
+      assertFalse(verticle.usesVirtualThreads());
+      verifyUpdateAndQuery(vertx, testContext);
+    });
+  }
+
+  private void deploy(Vertx vertx, CoreseVerticle verticle, JsonObject config,
+      VertxTestContext testContext, Runnable verification) {
+    vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config),
+        testContext.succeeding(id -> testContext.verify(verification::run)));
+  }
+
+  // The update is applied via executeBlocking, and the query is evaluated on the query executor
+  private void verifyUpdateAndQuery(Vertx vertx, VertxTestContext testContext) {
+    DeliveryOptions insert = new DeliveryOptions()
+        .addHeader("method", "insert")
+        .addHeader("topic", TOPIC);
+    String quad = "graph <" + TOPIC + "> { <" + TOPIC + "John> "
+        + "<http://xmlns.com/foaf/0.1/knows> <" + TOPIC + "Bob> . }";
+
+    vertx.eventBus().request("corese", quad, insert, testContext.succeeding(reply -> {
+      DeliveryOptions query = new DeliveryOptions().addHeader("method", "query");
+
+      vertx.eventBus().<String>request("corese", "select ?x from <" + TOPIC + "> "
+          + "where { ?x <http://xmlns.com/foaf/0.1/knows> ?y }", query,
+          testContext.succeeding(result -> testContext.verify(() -> {
+            assertTrue(result.body().contains(TOPIC + "John"));
+            testContext.completeNow();
+          })));
+    }));
+  }
+}
@@ -0,0 +1,95 @@
+package org.hyperagents.rdfsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class QueryResultCacheTest {
+  private static final String TOPIC = "http://hyperagents.org/";
+  private static final String QUERY = "select * from <" + TOPIC + "> where { ?x ?y ?z }";
+
+  private QueryResultCache cache;
+
+  @BeforeEach
+  void prepare() {
+    cache = new QueryResultCache(2);
+  }
+
+  @Test
+  @DisplayName("Test cached results are returned while topics are unchanged")
+  void testCacheHit() {
+    cache.put(QUERY, versionsOf(TOPIC), "text/turtle", "payload");
+
+    assertTrue(cache.get(QUERY, Collections.singleton(TOPIC)).isPresent());
+    assertEquals("payload", cache.get(QUERY, Collections.singleton(TOPIC)).get().getPayload());
+  }
+
+  @Test
+  @DisplayName("Test cached results are invalidated when a topic changes")
+  void testInvalidation() {
+    cache.put(QUERY, versionsOf(TOPIC), "text/turtle", "payload");
+    cache.topicChanged(TOPIC);
+
+    assertEquals(1, cache.getVersion(TOPIC));
+    assertFalse(cache.get(QUERY, Collections.singleton(TOPIC)).isPresent());
+  }
+
+  @Test
+  @DisplayName("Test stale results are not cached")
+  void testStaleVersions() {
+    Map<String, Long> versions = versionsOf(TOPIC);
+    cache.topicChanged(TOPIC);
+    cache.put(QUERY, versions, "text/turtle", "payload");
+
+    assertFalse(cache.get(QUERY, Collections.singleton(TOPIC)).isPresent());
+  }
+
+  @Test
+  @DisplayName("Test changes on other topics do not invalidate results")
+  void testOtherTopicChanged() {
+    cache.put(QUERY, versionsOf(TOPIC), "text/turtle", "payload");
+    cache.topicChanged("http://example.org/");
+
+    assertTrue(cache.get(QUERY, Collections.singleton(TOPIC)).isPresent());
+  }
+
+  @Test
+  @DisplayName("Test least recently used results are evicted")
+  void testEviction() {
+    cache.put("q1", versionsOf(TOPIC), "text/turtle", "1");
+    cache.put("q2", versionsOf(TOPIC), "text/turtle", "2");
+    cache.get("q1", Collections.singleton(TOPIC));
+    cache.put("q3", versionsOf(TOPIC), "text/turtle", "3");
+
+    Set<String> topics = Collections.singleton(TOPIC);
+    assertTrue(cache.get("q1", topics).isPresent());
+    assertFalse(cache.get("q2", topics).isPresent());
+    assertTrue(cache.get("q3", topics).isPresent());
+  }
+
+  @Test
+  @DisplayName("Test the versions of all topics are captured as a copy")
+  void testGetVersions() {
+    cache.topicChanged(TOPIC);
+    Map<String, Long> versions = cache.getVersions();
+    cache.topicChanged(TOPIC);
+
+    assertEquals(1L, versions.get(TOPIC));
+    assertEquals(2L, cache.getVersion(TOPIC));
+  }
+
+  private Map<String, Long> versionsOf(String topic) {
+    Map<String, Long> versions = new HashMap<String, Long>();
+    versions.put(topic, cache.getVersion(topic));
+    return versions;
+  }
+}
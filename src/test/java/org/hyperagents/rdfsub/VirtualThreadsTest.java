@@ -0,0 +1,35 @@
+package org.hyperagents.rdfsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  @DisplayName("Test virtual threads are only reported as supported if they can be created")
+  void testSupport() throws InterruptedException, ExecutionException {
+    if (VirtualThreads.isSupported()) {
+      Thread thread = VirtualThreads.newThreadFactory("test-").newThread(() -> { });
+      assertTrue(thread.getName().startsWith("test-"));
+
+      ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+      try {
+        assertEquals("done", executor.submit(() -> "done").get());
+      } finally {
+        executor.shutdownNow();
+      }
+    } else {
+      assertThrows(UnsupportedOperationException.class,
+          () -> VirtualThreads.newThreadFactory("test-"));
+      assertThrows(UnsupportedOperationException.class,
+          () -> VirtualThreads.newThreadPerTaskExecutor());
+    }
+  }
+}
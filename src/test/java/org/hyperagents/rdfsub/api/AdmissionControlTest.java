@@ -0,0 +1,68 @@
+package org.hyperagents.rdfsub.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.json.JsonObject;
+
+class AdmissionControlTest {
+  private static final String TOPIC = "http://hyperagents.org/";
+
+  @Test
+  @DisplayName("Test the backlog is bounded")
+  void testMaxBacklog() {
+    AtomicInteger backlog = new AtomicInteger();
+    AdmissionControl admissionControl = new AdmissionControl(backlog::get, 2, 0, 0, 1);
+
+    backlog.incrementAndGet();
+    assertFalse(admissionControl.isOverloaded());
+
+    backlog.incrementAndGet();
+    assertTrue(admissionControl.isOverloaded());
+
+    backlog.decrementAndGet();
+    assertFalse(admissionControl.isOverloaded());
+  }
+
+  @Test
+  @DisplayName("Test the publisher quota is enforced")
+  void testPublisherQuota() {
+    AdmissionControl admissionControl = new AdmissionControl(() -> 0, 100, 2, 0, 1);
+
+    assertTrue(admissionControl.tryAcquire("publisher", TOPIC));
+    assertTrue(admissionControl.tryAcquire("publisher", TOPIC));
+    assertFalse(admissionControl.tryAcquire("publisher", TOPIC));
+    assertTrue(admissionControl.tryAcquire("other-publisher", TOPIC));
+  }
+
+  @Test
+  @DisplayName("Test the topic quota is enforced across publishers")
+  void testTopicQuota() {
+    AdmissionControl admissionControl = new AdmissionControl(() -> 0, 100, 0, 1, 1);
+
+    assertTrue(admissionControl.tryAcquire("publisher", TOPIC));
+    assertFalse(admissionControl.tryAcquire("other-publisher", TOPIC));
+    assertTrue(admissionControl.tryAcquire("publisher", "http://example.org/"));
+  }
+
+  @Test
+  @DisplayName("Test the admission control is created from the configuration")
+  void testFromConfig() {
+    AtomicInteger backlog = new AtomicInteger();
+    AdmissionControl admissionControl = AdmissionControl.fromConfig(new JsonObject()
+        .put("max-backlog", 1)
+        .put("retry-after", 5), backlog::get);
+
+    assertEquals(5, admissionControl.getRetryAfter());
+    assertTrue(admissionControl.tryAcquire("publisher", TOPIC));
+
+    backlog.incrementAndGet();
+    assertTrue(admissionControl.isOverloaded());
+  }
+}
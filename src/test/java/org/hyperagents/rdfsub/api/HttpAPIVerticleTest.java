@@ -0,0 +1,38 @@
+package org.hyperagents.rdfsub.api;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class HttpAPIVerticleTest {
+
+  @Test
+  @DisplayName("Test absolute and relative IRIs are valid")
+  void testValidIris() {
+    assertTrue(HttpAPIVerticle.isValidIri("http://hyperagents.org/"));
+    assertTrue(HttpAPIVerticle.isValidIri("http://hyperagents.org/John?x=1&y=2#me"));
+    assertTrue(HttpAPIVerticle.isValidIri("urn:uuid:3b2b0a9c"));
+  }
+
+  @Test
+  @DisplayName("Test empty IRIs and IRIs with whitespace are invalid")
+  void testEmptyAndWhitespace() {
+    assertFalse(HttpAPIVerticle.isValidIri(null));
+    assertFalse(HttpAPIVerticle.isValidIri(""));
+    assertFalse(HttpAPIVerticle.isValidIri("http://hyperagents.org/John Doe"));
+    assertFalse(HttpAPIVerticle.isValidIri("http://hyperagents.org/\n"));
+    assertFalse(HttpAPIVerticle.isValidIri("http://hyperagents.org/\t"));
+  }
+
+  @Test
+  @DisplayName("Test IRIs with characters that could inject SPARQL are invalid")
+  void testInjection() {
+    for (char c : "<>\"{}|^`\\".toCharArray()) {
+      assertFalse(HttpAPIVerticle.isValidIri("http://hyperagents.org/" + c), String.valueOf(c));
+    }
+
+    assertFalse(HttpAPIVerticle.isValidIri("http://hyperagents.org/> . } graph <urn:other> { <a"));
+  }
+}
@@ -0,0 +1,248 @@
+package org.hyperagents.rdfsub.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+class StreamingIngestTest {
+  private static final String TOPIC = "http://hyperagents.org/";
+
+  private AtomicInteger backlog;
+  private StreamingIngest ingest;
+  private TestSource source;
+  private TestReplies replies;
+
+  /**
+   * A source that only records whether it is paused.
+   */
+  private static class TestSource implements ReadStream<Buffer> {
+    private boolean paused = false;
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+      paused = true;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+      paused = false;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> fetch(long amount) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+  }
+
+  /**
+   * A stream of replies whose write queue can be filled and drained by the tests.
+   */
+  private static class TestReplies implements WriteStream<Buffer> {
+    private boolean full = false;
+    private Handler<Void> drainHandler = null;
+
+    private void drain() {
+      full = false;
+      drainHandler.handle(null);
+    }
+
+    @Override
+    public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public WriteStream<Buffer> write(Buffer data) {
+      return this;
+    }
+
+    @Override
+    public WriteStream<Buffer> write(Buffer data, Handler<AsyncResult<Void>> handler) {
+      return this;
+    }
+
+    @Override
+    public void end() { }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) { }
+
+    @Override
+    public WriteStream<Buffer> setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return full;
+    }
+
+    @Override
+    public WriteStream<Buffer> drainHandler(Handler<Void> handler) {
+      drainHandler = handler;
+      return this;
+    }
+  }
+
+  @BeforeEach
+  void prepare(Vertx vertx) {
+    backlog = new AtomicInteger();
+    ingest = new StreamingIngest(vertx, new AdmissionControl(backlog::get, 100, 0, 0, 1), 2, 500);
+    source = new TestSource();
+    replies = new TestReplies();
+
+    // Updates on the subject <.../fail> fail, updates on the subject <.../pending> never complete
+    vertx.eventBus().<String>consumer("corese", message -> {
+      if (message.body().contains("<" + TOPIC + "fail>")) {
+        message.fail(500, "Update failed.");
+      } else if (!message.body().contains("<" + TOPIC + "pending>")) {
+        message.reply(null);
+      }
+    });
+  }
+
+  @Test
+  @DisplayName("Test applied updates are acknowledged")
+  void testAck(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertEquals(1L, reply.getLong("ack"));
+          testContext.completeNow();
+        })).handleRecord(update(1, "John")));
+  }
+
+  @Test
+  @DisplayName("Test failed updates are rejected with an error")
+  void testError(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertEquals(2L, reply.getLong("seq"));
+          assertEquals("Update failed.", reply.getString("error"));
+          testContext.completeNow();
+        })).handleRecord(update(2, "fail")));
+  }
+
+  @Test
+  @DisplayName("Test updates that time out are reported as pending")
+  void testPending(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertEquals(3L, reply.getLong("seq"));
+          assertTrue(reply.getBoolean("pending"));
+          assertFalse(reply.containsKey("error"));
+          testContext.completeNow();
+        })).handleRecord(update(3, "pending")));
+  }
+
+  @Test
+  @DisplayName("Test updates with invalid IRIs are rejected")
+  void testInvalidIri(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertEquals(4L, reply.getLong("seq"));
+          assertEquals("Invalid IRI.", reply.getString("error"));
+          testContext.completeNow();
+        })).handleRecord(update(4, "John> . } graph <urn:other> { <urn:a")));
+  }
+
+  @Test
+  @DisplayName("Test updates with unknown actions are rejected")
+  void testInvalidUpdate(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertEquals(5L, reply.getLong("seq"));
+          assertEquals("Invalid update.", reply.getString("error"));
+          testContext.completeNow();
+        })).handleRecord(new JsonObject(update(5, "John")).put("action", "update").encode()));
+  }
+
+  @Test
+  @DisplayName("Test streams are paused above the high-water mark until the backlog is halved")
+  void testBacklogPause(Vertx vertx, VertxTestContext testContext) {
+    vertx.runOnContext(v -> {
+      StreamingIngest.UpdateStream stream = ingest.open(source, replies, "publisher", reply -> {});
+
+      backlog.set(3);
+      stream.handleRecord(update(6, "pending"));
+
+      testContext.verify(() -> {
+        assertTrue(source.paused);
+
+        backlog.set(2);
+        ingest.resumeIfDrained();
+        assertTrue(source.paused);
+
+        backlog.set(1);
+        ingest.resumeIfDrained();
+        assertFalse(source.paused);
+        testContext.completeNow();
+      });
+    });
+  }
+
+  @Test
+  @DisplayName("Test streams are paused while the write queue of replies is full")
+  void testRepliesPause(Vertx vertx, VertxTestContext testContext) {
+    replies.full = true;
+
+    vertx.runOnContext(v -> ingest.open(source, replies, "publisher",
+        reply -> testContext.verify(() -> {
+          assertFalse(source.paused);
+
+          // The source is paused after the reply was written
+          vertx.runOnContext(w -> testContext.verify(() -> {
+            assertTrue(source.paused);
+
+            replies.drain();
+            assertFalse(source.paused);
+            testContext.completeNow();
+          }));
+        })).handleRecord(update(7, "John")));
+  }
+
+  private static String update(long seq, String subject) {
+    return new JsonObject()
+        .put("seq", seq)
+        .put("action", "insert")
+        .put("topic", TOPIC)
+        .put("subject", TOPIC + subject)
+        .put("predicate", "http://xmlns.com/foaf/0.1/knows")
+        .put("object", TOPIC + "Bob")
+        .encode();
+  }
+}
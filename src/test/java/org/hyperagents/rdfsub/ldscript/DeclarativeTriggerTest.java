@@ -0,0 +1,168 @@
+package org.hyperagents.rdfsub.ldscript;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hyperagents.rdfsub.ldscript.DeclarativeTrigger.Event;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.kgram.api.core.Edge;
+import fr.inria.corese.kgram.api.core.Node;
+import fr.inria.corese.sparql.api.IDatatype;
+import fr.inria.corese.sparql.datatype.DatatypeMap;
+import fr.inria.corese.sparql.exceptions.EngineException;
+
+class DeclarativeTriggerTest {
+  private static final String PREFIXES = "@prefix us: <" + DeclarativeTrigger.US_NS + "> .\n"
+      + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n";
+
+  private static final String TOPIC = "http://hyperagents.org/";
+  private static final String KNOWS = "http://xmlns.com/foaf/0.1/knows";
+  private static final String AGE = "http://xmlns.com/foaf/0.1/age";
+
+  private static final IDatatype GRAPH = DatatypeMap.newResource(TOPIC);
+  private static final IDatatype JOHN = DatatypeMap.newResource(TOPIC + "John");
+  private static final IDatatype BOB = DatatypeMap.newResource(TOPIC + "Bob");
+
+  @Test
+  @DisplayName("Test the event defaults to us:Any")
+  void testDefaultEvent() throws LoadException, EngineException {
+    DeclarativeTrigger trigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:predicate <" + KNOWS + "> .");
+
+    assertTrue(trigger.matches(Event.INSERT, GRAPH, JOHN, DatatypeMap.newResource(KNOWS), BOB));
+    assertTrue(trigger.matches(Event.DELETE, GRAPH, JOHN, DatatypeMap.newResource(KNOWS), BOB));
+    assertFalse(trigger.matches(Event.INSERT, GRAPH, JOHN, DatatypeMap.newResource(AGE), BOB));
+  }
+
+  @Test
+  @DisplayName("Test insert and delete patterns only match their event")
+  void testInsertAndDelete() throws LoadException, EngineException {
+    DeclarativeTrigger insertTrigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:event us:Insert ; us:graph <" + TOPIC + "> .");
+    DeclarativeTrigger deleteTrigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:event us:Delete ; us:graph <" + TOPIC + "> .");
+
+    IDatatype knows = DatatypeMap.newResource(KNOWS);
+
+    assertTrue(insertTrigger.matches(Event.INSERT, GRAPH, JOHN, knows, BOB));
+    assertFalse(insertTrigger.matches(Event.DELETE, GRAPH, JOHN, knows, BOB));
+    assertTrue(deleteTrigger.matches(Event.DELETE, GRAPH, JOHN, knows, BOB));
+    assertFalse(deleteTrigger.matches(Event.INSERT, GRAPH, JOHN, knows, BOB));
+  }
+
+  @Test
+  @DisplayName("Test a trigger fires if any of its patterns matches")
+  void testMultiplePatterns() throws LoadException, EngineException {
+    DeclarativeTrigger trigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:subject <" + TOPIC + "Bob> .\n"
+        + "[] a us:TriggerPattern ; us:object <" + TOPIC + "Bob> .");
+
+    IDatatype knows = DatatypeMap.newResource(KNOWS);
+
+    assertTrue(trigger.matches(Event.INSERT, GRAPH, JOHN, knows, BOB));
+    assertTrue(trigger.matches(Event.INSERT, GRAPH, BOB, knows, JOHN));
+    assertFalse(trigger.matches(Event.INSERT, GRAPH, JOHN, knows, JOHN));
+  }
+
+  @Test
+  @DisplayName("Test patterns on other graphs do not match")
+  void testOtherGraph() throws LoadException, EngineException {
+    DeclarativeTrigger trigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:graph <" + TOPIC + "> .");
+
+    assertFalse(trigger.matches(Event.INSERT, DatatypeMap.newResource("http://example.org/"),
+        JOHN, DatatypeMap.newResource(KNOWS), BOB));
+    assertFalse(trigger.matches(Event.INSERT, null, JOHN, DatatypeMap.newResource(KNOWS), BOB));
+  }
+
+  @Test
+  @DisplayName("Test literal objects are compared as RDF terms")
+  void testLiteralTerms() throws LoadException, EngineException {
+    DeclarativeTrigger trigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:object \"1\" .");
+
+    IDatatype age = DatatypeMap.newResource(AGE);
+
+    assertTrue(trigger.matches(Event.INSERT, GRAPH, JOHN, age, DatatypeMap.newInstance("1")));
+    assertFalse(trigger.matches(Event.INSERT, GRAPH, JOHN, age, DatatypeMap.newInstance(1)));
+    assertFalse(trigger.matches(Event.INSERT, GRAPH, JOHN, age,
+        DatatypeMap.createLiteral("1", null, "en")));
+    assertFalse(trigger.matches(Event.INSERT, GRAPH, JOHN, age, DatatypeMap.newResource("1")));
+  }
+
+  @Test
+  @DisplayName("Test updates are matched against the deleted and inserted edges")
+  void testUpdateEdges() throws LoadException, EngineException {
+    DeclarativeTrigger trigger = DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:event us:Insert ; us:graph <" + TOPIC + "> ; "
+        + "us:predicate <" + KNOWS + "> .");
+
+    IDatatype knows = DatatypeMap.createList(newEdge(KNOWS));
+    IDatatype age = DatatypeMap.createList(newEdge(AGE));
+    IDatatype none = DatatypeMap.createList();
+
+    assertTrue(trigger.matches(none, knows));
+    assertTrue(trigger.matches(age, DatatypeMap.createList(newEdge(AGE), newEdge(KNOWS))));
+    assertFalse(trigger.matches(knows, none));
+    assertFalse(trigger.matches(none, age));
+    assertFalse(trigger.matches(null, null));
+  }
+
+  @Test
+  @DisplayName("Test the sandbox evaluates registered declarative triggers without LDScript")
+  void testSandboxInvokesDeclarativeTrigger() throws LoadException, EngineException {
+    String triggerIri = "http://localhost:1080/trigger";
+    DeclarativeTrigger.register(triggerIri, DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:predicate <" + KNOWS + "> ."));
+
+    // No LDScript function is defined for the trigger IRI in the sandbox graph
+    Sandbox sandbox = new Sandbox(Graph.create());
+
+    try {
+      assertTrue(sandbox.invokeTrigger(triggerIri, DatatypeMap.createList(),
+          DatatypeMap.createList(newEdge(KNOWS))).booleanValue());
+      assertFalse(sandbox.invokeTrigger(triggerIri, DatatypeMap.createList(),
+          DatatypeMap.createList(newEdge(AGE))).booleanValue());
+    } finally {
+      DeclarativeTrigger.unregister(triggerIri);
+    }
+  }
+
+  @Test
+  @DisplayName("Test descriptions without patterns are rejected")
+  void testNoPatterns() {
+    assertThrows(IllegalArgumentException.class, () -> DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:Subscription ."));
+  }
+
+  @Test
+  @DisplayName("Test unknown events are rejected")
+  void testUnknownEvent() {
+    assertThrows(IllegalArgumentException.class, () -> DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:event us:Update ."));
+  }
+
+  @Test
+  @DisplayName("Test malformed descriptions are rejected")
+  void testMalformedDescription() {
+    assertThrows(LoadException.class, () -> DeclarativeTrigger.compile(PREFIXES
+        + "[] a us:TriggerPattern ; us:event"));
+  }
+
+  // Data updates provide the deleted and inserted triples as Corese edges
+  private static IDatatype newEdge(String predicate) {
+    Graph graph = Graph.create();
+    Node g = graph.addGraph(TOPIC);
+    Node s = graph.addResource(TOPIC + "John");
+    Node p = graph.addProperty(predicate);
+    Node o = graph.addResource(TOPIC + "Bob");
+    Edge edge = graph.addEdge(g, s, p, o);
+
+    return DatatypeMap.createObject(edge);
+  }
+}
@@ -0,0 +1,156 @@
+package org.hyperagents.rdfsub.ldscript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+class NotificationStreamsTest {
+  private Context context;
+  private List<Long> received;
+
+  @BeforeEach
+  void prepare(Vertx vertx) {
+    context = vertx.getOrCreateContext();
+    received = new ArrayList<Long>();
+  }
+
+  @AfterEach
+  void reset() {
+    NotificationStreams.setBufferSize(NotificationStreams.DEFAULT_BUFFER_SIZE);
+  }
+
+  @Test
+  @DisplayName("Test streams cannot be attached for unregistered subscriptions")
+  void testUnregistered() {
+    String subscription = newSubscriptionIri();
+
+    assertFalse(NotificationStreams.isRegistered(subscription));
+    assertFalse(NotificationStreams.isRegistered(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> NotificationStreams.attach(subscription, 0, context, this::receive));
+    assertFalse(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    assertFalse(NotificationStreams.deliver(null, "text/turtle", ""));
+  }
+
+  @Test
+  @DisplayName("Test notifications are sent via HTTP until a stream was attached")
+  void testNeverAttached() {
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, false);
+
+    assertTrue(NotificationStreams.isRegistered(subscription));
+    assertFalse(NotificationStreams.deliver(subscription, "text/turtle", ""));
+  }
+
+  @Test
+  @DisplayName("Test notifications are numbered in order")
+  void testSequenceNumbers(VertxTestContext testContext) {
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, false);
+    NotificationStreams.attach(subscription, 0, context, this::receive);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    }
+
+    verifyReceived(testContext, 1L, 2L, 3L);
+  }
+
+  @Test
+  @DisplayName("Test notifications are buffered while detached and replayed from a sequence number")
+  void testReplay(VertxTestContext testContext) {
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, false);
+    NotificationStreams.attach(subscription, 0, context, notification -> {}).detach();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    }
+
+    NotificationStreams.attach(subscription, 2, context, this::receive);
+    verifyReceived(testContext, 2L, 3L);
+  }
+
+  @Test
+  @DisplayName("Test only the most recent notifications are buffered")
+  void testBufferSize(VertxTestContext testContext) {
+    NotificationStreams.setBufferSize(2);
+
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, true);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    }
+
+    NotificationStreams.attach(subscription, 1, context, this::receive);
+    verifyReceived(testContext, 2L, 3L);
+  }
+
+  @Test
+  @DisplayName("Test idle subscriptions are pruned unless they only use streams")
+  void testPruning() {
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, false);
+    NotificationStreams.attach(subscription, 0, context, notification -> {}).detach();
+
+    String streamOnlySubscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(streamOnlySubscription, true);
+
+    NotificationStreams.pruneIdleChannels(0);
+
+    assertFalse(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    assertTrue(NotificationStreams.deliver(streamOnlySubscription, "text/turtle", ""));
+    assertTrue(NotificationStreams.isRegistered(subscription));
+  }
+
+  @Test
+  @DisplayName("Test streams attached after pruning start over from sequence number 1")
+  void testAttachAfterPruning(VertxTestContext testContext) {
+    String subscription = newSubscriptionIri();
+    NotificationStreams.registerSubscription(subscription, false);
+    NotificationStreams.attach(subscription, 0, context, notification -> {}).detach();
+    NotificationStreams.deliver(subscription, "text/turtle", "");
+
+    NotificationStreams.pruneIdleChannels(0);
+    NotificationStreams.attach(subscription, 1, context, this::receive);
+
+    assertTrue(NotificationStreams.deliver(subscription, "text/turtle", ""));
+    verifyReceived(testContext, 1L);
+  }
+
+  private void receive(JsonObject notification) {
+    received.add(notification.getLong("seq"));
+  }
+
+  // Notifications are sent to the context in order, so they are received before this check runs
+  private void verifyReceived(VertxTestContext testContext, Long... expected) {
+    context.runOnContext(v -> testContext.verify(() -> {
+      assertEquals(Arrays.asList(expected), received);
+      testContext.completeNow();
+    }));
+  }
+
+  private static String newSubscriptionIri() {
+    return "http://localhost:8090/subscriptions/" + UUID.randomUUID();
+  }
+}